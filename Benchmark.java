@@ -0,0 +1,622 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/** Timing harness for gitlet's hot paths. Like the tests, it does dangerous
+ *  things to the working directory, so it must be started from an empty
+ *  scratch directory, which it empties again after every measurement:
+ *
+ *      java gitlet.Benchmark status 1000 5000 20000
+ *      java gitlet.Benchmark compression 1000
+ *      java gitlet.Benchmark delta 100
+ *      java gitlet.Benchmark chunking 256
+ *      java gitlet.Benchmark sha1 100000
+ *      java gitlet.Benchmark bitmaps 1000000
+ *      java gitlet.Benchmark diff 100000
+ *      java gitlet.Benchmark merge 200
+ *
+ *  Each benchmark prints one line per size on System.out.
+ *  @author Kyusuk Oh
+ */
+public class Benchmark {
+
+    /** Bytes written to each generated file. */
+    static final int FILE_SIZE = 4096;
+
+    public static void main(String... args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java gitlet.Benchmark status|compression|delta|chunking|sha1|bitmaps|diff|merge N...");
+            return;
+        }
+        String[] existing = Repository.CWD.list();
+        if (existing == null || existing.length > 0) {
+            System.out.println("Run the benchmark from an empty directory.");
+            return;
+        }
+        if (args[0].equals("status")) {
+            System.out.printf("%8s %12s %12s %12s%n",
+                    "files", "cold 1 thr", "cold N thr", "warm");
+            for (int i = 1; i < args.length; i += 1) {
+                status(Integer.parseInt(args[i]));
+            }
+        } else if (args[0].equals("compression")) {
+            System.out.printf("%8s %6s %12s %12s %12s%n",
+                    "files", "level", "disk bytes", "write", "read");
+            for (int i = 1; i < args.length; i += 1) {
+                for (int level : new int[] {0, 1, 6, 9}) {
+                    compression(Integer.parseInt(args[i]), level);
+                }
+            }
+        } else if (args[0].equals("delta")) {
+            System.out.printf("%8s %12s %12s %12s %12s%n",
+                    "commits", "loose bytes", "packed bytes", "loose co", "packed co");
+            for (int i = 1; i < args.length; i += 1) {
+                delta(Integer.parseInt(args[i]));
+            }
+        } else if (args[0].equals("chunking")) {
+            System.out.printf("%8s %8s %14s %12s %12s%n",
+                    "MB", "chunked", "edit bytes", "add", "reset");
+            for (int i = 1; i < args.length; i += 1) {
+                chunking(Integer.parseInt(args[i]), false);
+                chunking(Integer.parseInt(args[i]), true);
+            }
+        } else if (args[0].equals("sha1")) {
+            System.out.printf("%8s %-22s %12s %14s%n", "hashes", "method", "ns/hash", "bytes/hash");
+            for (int i = 1; i < args.length; i += 1) {
+                sha1(Integer.parseInt(args[i]));
+            }
+        } else if (args[0].equals("bitmaps")) {
+            System.out.printf("%8s %-14s %12s %12s %10s%n",
+                    "commits", "query", "walk", "bitmaps", "commits");
+            for (int i = 1; i < args.length; i += 1) {
+                bitmaps(Integer.parseInt(args[i]));
+            }
+        } else if (args[0].equals("diff")) {
+            System.out.printf("%8s %8s %-10s %12s %10s %10s%n",
+                    "lines", "changed", "algorithm", "time", "edits", "lines out");
+            for (int i = 1; i < args.length; i += 1) {
+                for (int percent : new int[] {1, 10, 50}) {
+                    diff(Integer.parseInt(args[i]), percent);
+                }
+            }
+        } else if (args[0].equals("merge")) {
+            System.out.printf("%8s %8s %12s%n", "files", "threads", "resolve");
+            for (int i = 1; i < args.length; i += 1) {
+                merge(Integer.parseInt(args[i]));
+            }
+        } else {
+            System.out.println("No benchmark with that name exists.");
+        }
+    }
+
+    /** Times status in a repository of N committed files, 1% of which are
+     *  then modified: with an empty index on one thread and on all
+     *  processors, and again with the index filled in. */
+    private static void status(int n) throws IOException {
+        setUp(n);
+        Random random = new Random(n);
+        for (int i = 0; i < n; i += 100) {
+            writeRandomFile("f" + i + ".txt", random);
+        }
+        sleepPastRacyWindow();
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        Repository.INDEX.delete();
+        double coldSerial = timeStatus(1);
+        Repository.INDEX.delete();
+        double coldParallel = timeStatus(processors);
+        double warm = timeStatus(processors);
+        System.out.printf("%8d %10.1fms %10.1fms %10.1fms%n",
+                n, coldSerial, coldParallel, warm);
+        tearDown();
+    }
+
+    /** Stores N source-like text files with compression LEVEL and reports
+     *  the space they take and the time to write and to read them all. */
+    private static void compression(int n, int level) throws IOException {
+        System.setProperty("gitlet.compression", Integer.toString(level));
+        Repository.OBJECTS.mkdirs();
+        Random random = new Random(n);
+        byte[][] files = new byte[n][];
+        for (int i = 0; i < n; i += 1) {
+            files[i] = sourceLikeText(random);
+        }
+        ObjectStore store = new ObjectStore();
+        String[] ids = new String[n];
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i += 1) {
+            ids[i] = store.put(files[i]);
+        }
+        double write = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        for (String id : ids) {
+            store.get(id);
+        }
+        double read = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%8d %6d %12d %10.1fms %10.1fms%n",
+                n, level, diskUsage(Repository.OBJECTS.toPath()), write, read);
+        tearDown();
+    }
+
+    /** Commits N versions of a large log-like file, each changing a few
+     *  lines, and reports the size of .gitlet and the time to check out
+     *  every version with checkoutCommit, before and after a repack. */
+    private static void delta(int n) throws IOException {
+        Repository repository = new Repository();
+        Random random = new Random(n);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 4000; i += 1) {
+            lines.add(logLine(random, i));
+        }
+        ObjectId[] ids = new ObjectId[n];
+        silently(() -> {
+            repository.init();
+            for (int c = 0; c < n; c += 1) {
+                for (int k = 0; k < 5; k += 1) {
+                    int at = random.nextInt(lines.size());
+                    lines.set(at, logLine(random, at));
+                }
+                Utils.writeContents(Utils.join(Repository.CWD, "big.log"),
+                        String.join("\n", lines));
+                repository.add("big.log");
+                repository.commit("version " + c);
+                ids[c] = Refs.head();
+            }
+        });
+        long loose = diskUsage(Repository.GITLET_DIR.toPath());
+        double looseCheckout = silently(() -> {
+            for (ObjectId id : ids) {
+                repository.checkoutCommit(id.toHex(), "big.log");
+            }
+        });
+        silently(repository::repack);
+        long packed = diskUsage(Repository.GITLET_DIR.toPath());
+        Repository reloaded = new Repository();
+        double packedCheckout = silently(() -> {
+            for (ObjectId id : ids) {
+                reloaded.checkoutCommit(id.toHex(), "big.log");
+            }
+        });
+        System.out.printf("%8d %12d %12d %10.1fms %10.1fms%n",
+                n, loose, packed, looseCheckout, packedCheckout);
+        tearDown();
+    }
+
+    /** Commits a random file of MB megabytes, overwrites a few bytes in
+     *  its middle and commits it again, then resets back to the first
+     *  commit. Reports how much the second commit added to .gitlet and the
+     *  time taken by its add and by the reset, with the file CHUNKED or
+     *  stored whole. */
+    private static void chunking(int mb, boolean chunked) throws IOException {
+        System.setProperty("gitlet.chunkThreshold",
+                Long.toString(chunked ? ObjectStore.DEFAULT_CHUNK_THRESHOLD : Long.MAX_VALUE));
+        File big = Utils.join(Repository.CWD, "big.bin");
+        Random random = new Random(mb);
+        byte[] block = new byte[1 << 20];
+        try (OutputStream out = new FileOutputStream(big)) {
+            for (int i = 0; i < mb; i += 1) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+        Repository repository = new Repository();
+        ObjectId[] first = new ObjectId[1];
+        silently(() -> {
+            repository.init();
+            repository.add("big.bin");
+            repository.commit("original");
+            first[0] = Refs.head();
+        });
+        sleepPastRacyWindow();
+        long before = diskUsage(Repository.GITLET_DIR.toPath());
+        try (RandomAccessFile file = new RandomAccessFile(big, "rw")) {
+            file.seek(big.length() / 2);
+            file.write("edited".getBytes(StandardCharsets.UTF_8));
+        }
+        double add = silently(() -> repository.add("big.bin"));
+        silently(() -> repository.commit("edited"));
+        long edit = diskUsage(Repository.GITLET_DIR.toPath()) - before;
+        sleepPastRacyWindow();
+        silently(repository::status);
+        double reset = silently(() -> repository.reset(first[0].toHex()));
+        System.out.printf("%8d %8s %14d %10.1fms %10.1fms%n",
+                mb, chunked, edit, add, reset);
+        System.clearProperty("gitlet.chunkThreshold");
+        tearDown();
+    }
+
+    /** Hashes N small buffers with the SHA-1 helper as it was before
+     *  Hasher (a new MessageDigest and a Formatter per hash), with
+     *  Utils.sha1 and with one reused Hasher, and reports the time and
+     *  heap allocated per hash. JMH is not part of this build, so each is
+     *  simply run once to warm up and once to measure. */
+    private static void sha1(int n) {
+        Random random = new Random(n);
+        byte[][] inputs = new byte[1024][];
+        for (int i = 0; i < inputs.length; i += 1) {
+            inputs[i] = new byte[64 + random.nextInt(FILE_SIZE)];
+            random.nextBytes(inputs[i]);
+        }
+        Hasher hasher = new Hasher();
+        String[] names = {"MessageDigest+Formatter", "Utils.sha1", "Hasher"};
+        for (int method = 0; method < names.length; method += 1) {
+            for (int round = 0; round < 2; round += 1) {
+                long allocated = allocatedBytes();
+                long start = System.nanoTime();
+                for (int i = 0; i < n; i += 1) {
+                    byte[] input = inputs[i % inputs.length];
+                    if (method == 0) {
+                        formatterSha1(input);
+                    } else if (method == 1) {
+                        Utils.sha1(input);
+                    } else {
+                        hasher.hash(input);
+                    }
+                }
+                double nanos = (double) (System.nanoTime() - start) / n;
+                double bytes = (double) (allocatedBytes() - allocated) / n;
+                if (round == 1) {
+                    System.out.printf("%8d %-22s %12.0f %14.0f%n",
+                            n, names[method], nanos, bytes);
+                }
+            }
+        }
+    }
+
+    /** Number of branches in the synthetic history of the bitmaps
+     *  benchmark. */
+    static final int BRANCHES = 16;
+
+    /** Writes the commit graph of a synthetic history of N commits spread
+     *  over BRANCHES branches, one in twenty of them a merge, with the last
+     *  branch abandoned and restarted every thousand commits. Times three
+     *  queries by walking the graph and with reachability bitmaps of the
+     *  branch tips, then the writing and reading of those bitmaps. */
+    private static void bitmaps(int n) throws IOException {
+        Random random = new Random(n);
+        ObjectId[] ids = new ObjectId[n];
+        int[] parent = new int[n];
+        int[] branchParent = new int[n];
+        int[] tips = new int[BRANCHES];
+        for (int i = 0; i < n; i += 1) {
+            ids[i] = new ObjectId(random.nextLong(), random.nextLong(), random.nextInt());
+            int branch = random.nextInt(BRANCHES);
+            parent[i] = i == 0 ? -1 : tips[branch];
+            branchParent[i] = i > 0 && i % 20 == 0 ? tips[random.nextInt(BRANCHES)] : -1;
+            if (branchParent[i] == parent[i]) {
+                branchParent[i] = -1;
+            }
+            tips[branch] = i;
+            if (i % 1000 == 999) {
+                tips[BRANCHES - 1] = tips[0];
+            }
+        }
+
+        //renumber by id, as the commit graph does
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> ids[x].compareTo(ids[y]));
+        int[] position = new int[n];
+        for (int pos = 0; pos < n; pos += 1) {
+            position[order[pos]] = pos;
+        }
+        ObjectId[] sorted = new ObjectId[n];
+        int[] parents = new int[2 * n];
+        for (int pos = 0; pos < n; pos += 1) {
+            int i = order[pos];
+            sorted[pos] = ids[i];
+            parents[2 * pos] = parent[i] < 0 ? CommitGraph.NONE : position[parent[i]];
+            parents[2 * pos + 1] = branchParent[i] < 0 ? CommitGraph.NONE : position[branchParent[i]];
+        }
+        Repository.GITLET_DIR.mkdirs();
+        CommitGraph.write(Repository.COMMIT_GRAPH, sorted, parents);
+        CommitGraph graph = new CommitGraph(Repository.COMMIT_GRAPH, null);
+        List<ObjectId> tipIDs = new ArrayList<>();
+        for (int tip : tips) {
+            tipIDs.add(ids[tip]);
+        }
+
+        ReachabilityIndex walk = new ReachabilityIndex(Repository.BITMAPS, graph);
+        long start = System.nanoTime();
+        ReachabilityIndex.write(Repository.BITMAPS, graph, tipIDs);
+        double write = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        ReachabilityIndex indexed = new ReachabilityIndex(Repository.BITMAPS, graph);
+        double read = (System.nanoTime() - start) / 1e6;
+
+        String[] queries = {"reachable", "A but not B", "unreachable"};
+        for (String query : queries) {
+            double[] millis = new double[2];
+            int found = 0;
+            ReachabilityIndex[] indexes = {walk, indexed};
+            for (int k = 0; k < 2; k += 1) {
+                for (int round = 0; round < 2; round += 1) {
+                    start = System.nanoTime();
+                    found = reachabilityQuery(indexes[k], query, tipIDs);
+                    millis[k] = (System.nanoTime() - start) / 1e6;
+                }
+            }
+            System.out.printf("%8d %-14s %10.1fms %10.1fms %10d%n",
+                    n, query, millis[0], millis[1], found);
+        }
+        System.out.printf("%8d %-14s %10.1fms read %5.1fms %8dKB%n", n, "write bitmaps",
+                write, read, Repository.BITMAPS.length() >> 10);
+        tearDown();
+    }
+
+    /** Answers QUERY about the branches TIPS with INDEX and returns the
+     *  number of commits in the answer. */
+    private static int reachabilityQuery(ReachabilityIndex index, String query,
+                                         List<ObjectId> tips) {
+        HashSet<ObjectId> loose = new HashSet<>();
+        if (query.equals("reachable")) {
+            return index.reachable(tips.get(0), loose).cardinality();
+        } else if (query.equals("A but not B")) {
+            Bitmap result = index.reachable(tips.get(1), loose);
+            result.andNot(index.reachable(tips.get(2), loose));
+            return result.cardinality();
+        }
+        Bitmap result = index.all();
+        for (ObjectId tip : tips) {
+            result.andNot(index.reachable(tip, loose));
+        }
+        return result.cardinality();
+    }
+
+    /** Diffs a source-like file of N lines against a copy in which PERCENT
+     *  percent of the lines were replaced, deleted or followed by a new
+     *  line, with each algorithm, and reports the time including cutting
+     *  both texts into lines, the number of edits and the number of lines
+     *  they remove and add. */
+    private static void diff(int n, int percent) {
+        Random random = new Random(n + percent);
+        StringBuilder before = new StringBuilder();
+        while (before.length() < n * 40) {
+            before.append(new String(sourceLikeText(random), StandardCharsets.UTF_8));
+        }
+        List<String> lines = new ArrayList<>(List.of(before.toString().split("\n", -1)));
+        lines = new ArrayList<>(lines.subList(0, n));
+        List<String> changed = new ArrayList<>();
+        for (String line : lines) {
+            int roll = random.nextInt(300);
+            if (roll >= 3 * percent) {
+                changed.add(line);
+            } else if (roll < percent) {
+                changed.add("changed " + random.nextInt());
+            } else if (roll >= 2 * percent) {
+                changed.add(line);
+                changed.add("inserted " + random.nextInt());
+            }
+        }
+        Diff.Text a = new Diff.Text((String.join("\n", lines) + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        Diff.Text b = new Diff.Text((String.join("\n", changed) + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+
+        for (String algorithm : new String[] {Diff.MYERS, Diff.HISTOGRAM}) {
+            List<Diff.Edit> edits = null;
+            double millis = 0;
+            for (int round = 0; round < 2; round += 1) {
+                long start = System.nanoTime();
+                int[][] ids = Diff.intern(a, b);
+                edits = algorithm.equals(Diff.MYERS)
+                        ? Diff.myers(ids[0], ids[1]) : Diff.histogram(ids[0], ids[1]);
+                millis = (System.nanoTime() - start) / 1e6;
+            }
+            int lineCount = 0;
+            for (Diff.Edit edit : edits) {
+                lineCount += edit.getAEnd() - edit.getAStart() + edit.getBEnd() - edit.getBStart();
+            }
+            System.out.printf("%8d %7d%% %-10s %10.1fms %10d %10d%n",
+                    n, percent, algorithm, millis, edits.size(), lineCount);
+        }
+    }
+
+    /** Times MergePlan.resolve on N source-like files of about 64 KB that
+     *  both sides changed in different places, on 1, 2, 4 and 8 threads.
+     *  A first run stores the results, so every timed run does the same
+     *  work: reading, diffing, merging and hashing. */
+    private static void merge(int n) throws IOException {
+        Repository repository = setUp(0);
+        ObjectStore store = repository.objects();
+        Random random = new Random(n);
+        HashMap<String, String> split = new HashMap<>();
+        HashMap<String, String> head = new HashMap<>();
+        HashMap<String, String> other = new HashMap<>();
+        for (int i = 0; i < n; i += 1) {
+            StringBuilder text = new StringBuilder();
+            for (int k = 0; k < 16; k += 1) {
+                text.append(new String(sourceLikeText(random), StandardCharsets.UTF_8));
+            }
+            String base = text.toString();
+            int middle = base.indexOf('\n', base.length() / 2) + 1;
+            String name = "f" + i + ".txt";
+            split.put(name, store.put(base.getBytes(StandardCharsets.UTF_8)));
+            head.put(name, store.put(("changed on head\n" + base)
+                    .getBytes(StandardCharsets.UTF_8)));
+            other.put(name, store.put((base.substring(0, middle) + "changed on other\n"
+                    + base.substring(middle)).getBytes(StandardCharsets.UTF_8)));
+        }
+        new MergePlan(split, head, other).resolve(store, 1);
+        for (int threads : new int[] {1, 2, 4, 8}) {
+            MergePlan plan = new MergePlan(split, head, other);
+            long start = System.nanoTime();
+            plan.resolve(store, threads);
+            System.out.printf("%8d %8d %10.1fms%n", n, threads, (System.nanoTime() - start) / 1e6);
+        }
+        tearDown();
+    }
+
+    /** Returns the SHA-1 of DATA the way Utils.sha1 used to compute it. */
+    private static String formatterSha1(byte[] data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(data);
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the bytes allocated so far by the current thread, or 0 if
+     *  the JVM cannot tell. */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static String logLine(Random random, int i) {
+        return String.format("2024-01-01T00:%02d:%02d INFO [worker-%d] request %d took %dms",
+                i / 60 % 60, i % 60, random.nextInt(16), random.nextInt(1 << 20),
+                random.nextInt(5000));
+    }
+
+    /** Returns FILE_SIZE bytes or so of text that looks roughly like
+     *  source code. */
+    private static byte[] sourceLikeText(Random random) {
+        String[] words = {"int", "return", "if", "else", "for", "String", "value",
+            "index", "count", "result", "=", "+", "(", ")", "{", "}", ";", "null"};
+        StringBuilder text = new StringBuilder();
+        while (text.length() < FILE_SIZE) {
+            text.append("    ".repeat(random.nextInt(4)));
+            int length = 3 + random.nextInt(8);
+            for (int w = 0; w < length; w += 1) {
+                text.append(words[random.nextInt(words.length)]);
+                text.append(random.nextInt(4) == 0 ? Integer.toString(random.nextInt(100)) : "");
+                text.append(' ');
+            }
+            text.append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the total size of the files under DIR. */
+    private static long diskUsage(Path dir) throws IOException {
+        long[] total = {0};
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                total[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return total[0];
+    }
+
+    /** Returns the milliseconds taken by one status run with THREADS
+     *  hashing threads. */
+    private static double timeStatus(int threads) throws IOException {
+        System.setProperty("gitlet.threads", Integer.toString(threads));
+        Repository repository = Utils.readObject(Repository.REPO, Repository.class);
+        return silently(() -> repository.status());
+    }
+
+    /** Makes a repository holding N committed random files and returns it. */
+    private static Repository setUp(int n) throws IOException {
+        Repository repository = new Repository();
+        repository.setDeferWrites(true);
+        Random random = new Random(n);
+        silently(() -> {
+            repository.init();
+            for (int i = 0; i < n; i += 1) {
+                String name = "f" + i + ".txt";
+                writeRandomFile(name, random);
+                repository.add(name);
+            }
+            repository.commit("benchmark files");
+        });
+        repository.flush();
+        return repository;
+    }
+
+    /** A benchmarked piece of work. */
+    private interface Work {
+        void run() throws IOException;
+    }
+
+    /** Runs WORK with System.out discarded and returns its duration in
+     *  milliseconds. */
+    private static double silently(Work work) throws IOException {
+        PrintStream original = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            long start = System.nanoTime();
+            work.run();
+            return (System.nanoTime() - start) / 1e6;
+        } finally {
+            System.setOut(original);
+        }
+    }
+
+    private static void writeRandomFile(String name, Random random) {
+        byte[] content = new byte[FILE_SIZE];
+        for (int i = 0; i < content.length; i += 1) {
+            content[i] = (byte) ('a' + random.nextInt(26));
+        }
+        Utils.writeContents(Utils.join(Repository.CWD, name), content);
+    }
+
+    /** Waits until freshly written files are no longer racily clean, so
+     *  the index may vouch for them. */
+    private static void sleepPastRacyWindow() {
+        try {
+            Thread.sleep(Index.RACY_WINDOW_MS + 100);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Deletes everything in the working directory. */
+    private static void tearDown() throws IOException {
+        Path root = Repository.CWD.toPath();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e)
+                    throws IOException {
+                if (!dir.equals(root)) {
+                    Files.delete(dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
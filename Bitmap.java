@@ -0,0 +1,380 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/** A compressed set of non-negative ints, laid out like a Roaring bitmap.
+ *  The ints are split by their high 16 bits into chunks of 65536, and each
+ *  chunk that holds anything gets a container of its own: a sorted array of
+ *  the low 16 bits while it holds at most ARRAY_MAX of them, and a plain
+ *  1024-word bitmap once it holds more. Sparse and dense sets are thus
+ *  both small, and union, intersection and difference work a container at
+ *  a time, mostly on whole words.
+ *
+ *  Serialized, a bitmap is its container count followed by, for each
+ *  container, its key and cardinality as ints and then either the
+ *  cardinality's shorts or 1024 longs.
+ *  @author Kyusuk Oh
+ */
+public class Bitmap {
+
+    /** Most values kept in an array container. */
+    static final int ARRAY_MAX = 4096;
+    /** Longs in a bitmap container. */
+    static final int WORDS = 1024;
+
+    /** High 16 bits of the values in each container, in increasing order. */
+    private int[] keys = new int[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    /** The values sharing one key. Exactly one of VALUES and WORDS is used. */
+    private static class Container {
+        private short[] values;
+        private long[] words;
+        private int cardinality;
+
+        Container() {
+            values = new short[4];
+        }
+
+        Container copy() {
+            Container copy = new Container();
+            copy.values = values == null ? null : values.clone();
+            copy.words = words == null ? null : words.clone();
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        boolean contains(int low) {
+            if (words != null) {
+                return (words[low >>> 6] & (1L << low)) != 0;
+            }
+            return search(low) >= 0;
+        }
+
+        /** Returns the index of LOW in VALUES, or -(insertion point) - 1. */
+        int search(int low) {
+            int lo = 0;
+            int hi = cardinality - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int value = values[mid] & 0xffff;
+                if (value < low) {
+                    lo = mid + 1;
+                } else if (value > low) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(lo + 1);
+        }
+
+        void add(int low) {
+            if (words != null) {
+                long bit = 1L << low;
+                if ((words[low >>> 6] & bit) == 0) {
+                    words[low >>> 6] |= bit;
+                    cardinality += 1;
+                }
+                return;
+            }
+            int at = search(low);
+            if (at >= 0) {
+                return;
+            }
+            if (cardinality == ARRAY_MAX) {
+                toWords();
+                add(low);
+                return;
+            }
+            at = -at - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, 2 * cardinality));
+            }
+            System.arraycopy(values, at, values, at + 1, cardinality - at);
+            values[at] = (short) low;
+            cardinality += 1;
+        }
+
+        /** Turns this into a bitmap container. */
+        void toWords() {
+            words = new long[WORDS];
+            for (int i = 0; i < cardinality; i += 1) {
+                int low = values[i] & 0xffff;
+                words[low >>> 6] |= 1L << low;
+            }
+            values = null;
+        }
+
+        /** Turns this back into an array container if it has become small
+         *  enough. */
+        void shrink() {
+            if (words == null || cardinality > ARRAY_MAX) {
+                return;
+            }
+            short[] small = new short[Math.max(4, cardinality)];
+            int n = 0;
+            for (int w = 0; w < WORDS; w += 1) {
+                long word = words[w];
+                while (word != 0) {
+                    small[n++] = (short) (w * 64 + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            values = small;
+            words = null;
+        }
+
+        /** Returns this container's values as a bitmap, sharing WORDS if
+         *  this is already one. */
+        long[] asWords() {
+            if (words != null) {
+                return words;
+            }
+            long[] result = new long[WORDS];
+            for (int i = 0; i < cardinality; i += 1) {
+                int low = values[i] & 0xffff;
+                result[low >>> 6] |= 1L << low;
+            }
+            return result;
+        }
+
+        /** Adds every value of OTHER if UNION. Otherwise keeps only the
+         *  values whose presence in OTHER is KEEPIFPRESENT. A container
+         *  holding more than ARRAY_MAX values is always a bitmap, and any
+         *  other an array. */
+        void combine(Container other, boolean union, boolean keepIfPresent) {
+            if (union) {
+                if (words == null && other.words == null
+                        && cardinality + other.cardinality <= ARRAY_MAX) {
+                    //merge the two sorted arrays
+                    short[] merged = new short[Math.max(4, cardinality + other.cardinality)];
+                    int i = 0;
+                    int j = 0;
+                    int n = 0;
+                    while (i < cardinality || j < other.cardinality) {
+                        int mine = i < cardinality ? values[i] & 0xffff : Integer.MAX_VALUE;
+                        int theirs = j < other.cardinality
+                                ? other.values[j] & 0xffff : Integer.MAX_VALUE;
+                        merged[n++] = (short) Math.min(mine, theirs);
+                        i += mine <= theirs ? 1 : 0;
+                        j += theirs <= mine ? 1 : 0;
+                    }
+                    values = merged;
+                    cardinality = n;
+                    return;
+                }
+                if (words == null) {
+                    toWords();
+                }
+                long[] theirs = other.asWords();
+                int n = 0;
+                for (int w = 0; w < WORDS; w += 1) {
+                    words[w] |= theirs[w];
+                    n += Long.bitCount(words[w]);
+                }
+                cardinality = n;
+                shrink();
+                return;
+            }
+            if (words == null) {
+                int n = 0;
+                for (int i = 0; i < cardinality; i += 1) {
+                    if (other.contains(values[i] & 0xffff) == keepIfPresent) {
+                        values[n++] = values[i];
+                    }
+                }
+                cardinality = n;
+                return;
+            }
+            long[] theirs = other.asWords();
+            int n = 0;
+            for (int w = 0; w < WORDS; w += 1) {
+                words[w] = keepIfPresent ? words[w] & theirs[w] : words[w] & ~theirs[w];
+                n += Long.bitCount(words[w]);
+            }
+            cardinality = n;
+            shrink();
+        }
+
+        void forEach(int high, IntConsumer action) {
+            if (words == null) {
+                for (int i = 0; i < cardinality; i += 1) {
+                    action.accept(high | (values[i] & 0xffff));
+                }
+                return;
+            }
+            for (int w = 0; w < WORDS; w += 1) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept(high | (w * 64 + Long.numberOfTrailingZeros(word)));
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    /** Returns the index of KEY among the keys, or -(insertion point) - 1. */
+    private int find(int key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    /** Adds VALUE, which must not be negative. */
+    public void add(int value) {
+        int key = value >>> 16;
+        int at = find(key);
+        if (at < 0) {
+            at = -at - 1;
+            insert(at, key, new Container());
+        }
+        containers[at].add(value & 0xffff);
+    }
+
+    private void insert(int at, int key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * size);
+            containers = Arrays.copyOf(containers, 2 * size);
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(containers, at, containers, at + 1, size - at);
+        keys[at] = key;
+        containers[at] = container;
+        size += 1;
+    }
+
+    /** Returns true if VALUE is in this set. */
+    public boolean contains(int value) {
+        int at = find(value >>> 16);
+        return at >= 0 && containers[at].contains(value & 0xffff);
+    }
+
+    /** Returns the number of values in this set. */
+    public int cardinality() {
+        int n = 0;
+        for (int i = 0; i < size; i += 1) {
+            n += containers[i].cardinality;
+        }
+        return n;
+    }
+
+    /** Returns a copy of this set that shares nothing with it. */
+    public Bitmap copy() {
+        Bitmap copy = new Bitmap();
+        copy.keys = Arrays.copyOf(keys, Math.max(4, size));
+        copy.containers = new Container[copy.keys.length];
+        for (int i = 0; i < size; i += 1) {
+            copy.containers[i] = containers[i].copy();
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    /** Adds every value of OTHER to this set. */
+    public void or(Bitmap other) {
+        for (int j = 0; j < other.size; j += 1) {
+            int at = find(other.keys[j]);
+            if (at < 0) {
+                insert(-at - 1, other.keys[j], other.containers[j].copy());
+            } else {
+                containers[at].combine(other.containers[j], true, true);
+            }
+        }
+    }
+
+    /** Removes from this set every value that is not in OTHER. */
+    public void and(Bitmap other) {
+        retain(other, true);
+    }
+
+    /** Removes from this set every value that is in OTHER. */
+    public void andNot(Bitmap other) {
+        retain(other, false);
+    }
+
+    /** Keeps the values whose presence in OTHER is PRESENT. */
+    private void retain(Bitmap other, boolean present) {
+        int n = 0;
+        for (int i = 0; i < size; i += 1) {
+            int at = other.find(keys[i]);
+            Container container = containers[i];
+            if (at >= 0) {
+                container.combine(other.containers[at], false, present);
+            } else if (present) {
+                container.cardinality = 0;
+            }
+            if (container.cardinality > 0) {
+                keys[n] = keys[i];
+                containers[n] = container;
+                n += 1;
+            }
+        }
+        Arrays.fill(containers, n, size, null);
+        size = n;
+    }
+
+    /** Calls ACTION with each value, in increasing order. */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i += 1) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /** Returns the number of bytes write will use. */
+    public int serializedSize() {
+        int bytes = 4;
+        for (int i = 0; i < size; i += 1) {
+            Container container = containers[i];
+            bytes += 8 + (container.words == null ? 2 * container.cardinality : 8 * WORDS);
+        }
+        return bytes;
+    }
+
+    /** Writes this set into OUT. */
+    public void write(ByteBuffer out) {
+        out.putInt(size);
+        for (int i = 0; i < size; i += 1) {
+            Container container = containers[i];
+            out.putInt(keys[i]).putInt(container.cardinality);
+            if (container.words == null) {
+                for (int k = 0; k < container.cardinality; k += 1) {
+                    out.putShort(container.values[k]);
+                }
+            } else {
+                for (long word : container.words) {
+                    out.putLong(word);
+                }
+            }
+        }
+    }
+
+    /** Reads a set written by write from IN. */
+    public static Bitmap read(ByteBuffer in) {
+        Bitmap bitmap = new Bitmap();
+        int n = in.getInt();
+        bitmap.keys = new int[Math.max(4, n)];
+        bitmap.containers = new Container[bitmap.keys.length];
+        for (int i = 0; i < n; i += 1) {
+            Container container = new Container();
+            bitmap.keys[i] = in.getInt();
+            container.cardinality = in.getInt();
+            if (container.cardinality <= ARRAY_MAX) {
+                container.values = new short[Math.max(4, container.cardinality)];
+                for (int k = 0; k < container.cardinality; k += 1) {
+                    container.values[k] = in.getShort();
+                }
+            } else {
+                container.values = null;
+                container.words = new long[WORDS];
+                for (int w = 0; w < WORDS; w += 1) {
+                    container.words[w] = in.getLong();
+                }
+            }
+            bitmap.containers[i] = container;
+        }
+        bitmap.size = n;
+        return bitmap;
+    }
+}
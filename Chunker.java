@@ -0,0 +1,110 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/** Splits a stream into content-defined chunks with FastCDC. A gear hash
+ *  is rolled over the bytes, and a chunk ends where the hash has enough
+ *  zero bits, so boundaries depend on the nearby content only: an edit in
+ *  the middle of a large file changes the one or two chunks around it and
+ *  leaves every other chunk, and its id, as it was.
+ *
+ *  Chunks are between MIN_SIZE and MAX_SIZE bytes. Normalized chunking
+ *  uses a stricter mask before AVG_SIZE and a looser one after it, which
+ *  keeps most chunks close to the average.
+ *  @author Kyusuk Oh
+ */
+public class Chunker {
+
+    static final int MIN_SIZE = 256 << 10;
+    static final int AVG_SIZE = 1 << 20;
+    static final int MAX_SIZE = 4 << 20;
+    /** Masks with two bits more and two bits fewer than log2(AVG_SIZE),
+     *  taken from the top of the hash, whose bits depend on the most
+     *  recent 64 bytes. */
+    static final long MASK_SMALL = -1L << (64 - 22);
+    static final long MASK_LARGE = -1L << (64 - 18);
+    /** Seed of the gear table, fixed so chunk boundaries are stable. */
+    static final long SEED = 0x6769746c6574L;
+
+    /** One chunk of a file: the id of its blob and its length. */
+    public static class Chunk {
+        private final String id;
+        private final long length;
+
+        public Chunk(String id, long length) {
+            this.id = id;
+            this.length = length;
+        }
+
+        public String getID() {
+            return id;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+
+    /** Receives each chunk as it is cut. */
+    public interface Sink {
+        void chunk(byte[] data) throws IOException;
+    }
+
+    /** Random value per byte value, mixed into the hash. */
+    private final long[] gear = new long[256];
+
+    public Chunker() {
+        long state = SEED;
+        for (int i = 0; i < gear.length; i += 1) {
+            //splitmix64
+            state += 0x9e3779b97f4a7c15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            gear[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /** Cuts everything in IN into chunks, handing each to SINK in order.
+     *  At most MAX_SIZE bytes are held at once. */
+    public void split(InputStream in, Sink sink) throws IOException {
+        byte[] buffer = new byte[MAX_SIZE];
+        int filled = 0;
+        while (true) {
+            filled += in.readNBytes(buffer, filled, buffer.length - filled);
+            if (filled == 0) {
+                return;
+            }
+            int cut = cut(buffer, filled);
+            sink.chunk(Arrays.copyOf(buffer, cut));
+            System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+            filled -= cut;
+        }
+    }
+
+    /** Returns the length of the chunk that starts DATA[0..LENGTH). */
+    int cut(byte[] data, int length) {
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        int normal = Math.min(AVG_SIZE, length);
+        int end = Math.min(MAX_SIZE, length);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + gear[data[i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i += 1) {
+            hash = (hash << 1) + gear[data[i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+}
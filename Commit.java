@@ -2,6 +2,14 @@ package gitlet;
 
 import java.util.*;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 
 /** Represents a gitlet commit object.
@@ -9,98 +17,117 @@ import java.io.Serializable;
  */
 public class Commit implements Serializable {
     private String message;
-    private String ID;
+    private ObjectId ID;
     private String time;
-    private Commit parent;
-    private Commit branchParent;
+    private ObjectId parent;
+    private ObjectId branchParent;
     private String mergeID;
     private boolean isMerge;
-    private final HashMap<String, byte[]> committed = new HashMap<>();
-    public Commit(String msg, String time, Commit parent) {
+    private final HashMap<String, String> committed = new HashMap<>();
+    public Commit(String msg, String time, Commit parent,
+                  HashMap<String, String> toAdd, HashMap<String, String> toRemove) {
         this.message = msg;
-        this.parent = parent;
+        this.parent = null;
         this.branchParent = null;
         this.mergeID = "";
         this.isMerge = false;
 
         if (parent != null) {
+            this.parent = parent.getID();
             committed.putAll(parent.getCommitted());
             this.time = time;
         } else {
             this.time = "Wed Dec 31 16:00:00 1969 -0800";
         }
 
-        //Update files to add then empty add
-        HashMap<String, byte[]> toAdd = Utils.readObject(Repository.ADDMAP, HashMap.class);
+        //Update files to add and remove
         committed.putAll(toAdd);
-
-        //save to filesMap (inside if to avoid error during init)
-        if (parent != null) {
-            Tree tree = Utils.readObject(Repository.MAPS, Tree.class);
-            HashMap<String, byte[]> filesMap = tree.getFilesMap();
-            filesMap.putAll(toAdd);
-            tree.setFilesMap(filesMap);
-            Utils.writeContents(Repository.MAPS, Utils.serialize(tree));
-        }
-        //clear toAdd
-        toAdd.clear();
-        Utils.writeContents(Repository.ADDMAP, Utils.serialize(toAdd));
-
-        //Update files to remove then empty remove
-        HashMap<String, byte[]> toRemove = Utils.readObject(Repository.REMOVEMAP, HashMap.class);
         committed.keySet().removeAll(toRemove.keySet());
-        toRemove.clear();
 
-        if (committed.isEmpty()) {
-            this.ID = Utils.sha1(message);
-        } else {
-            this.ID = Utils.sha1(message, committed.keySet().toString(),
-                    committed.values().toString());
-        }
-        Utils.writeContents(Repository.REMOVEMAP, Utils.serialize((toRemove)));
+        this.ID = computeID();
     }
 
-    public Commit(String msg, String time, Commit parent, Commit branchParent) {
+    public Commit(String msg, String time, Commit parent, Commit branchParent,
+                  HashMap<String, String> toAdd, HashMap<String, String> toRemove) {
         this.message = msg;
         this.time = time;
-        this.parent = parent;
-        this.branchParent = branchParent;
+        this.parent = parent.getID();
+        this.branchParent = branchParent.getID();
         this.isMerge = true;
-        this.mergeID = parent.getID().substring(0, 7) + " "
-                + branchParent.getID().substring(0, 7);
+        this.mergeID = parent.getID().abbreviate(7) + " "
+                + branchParent.getID().abbreviate(7);
         this.committed.putAll(parent.getCommitted());
 
-        //Update files to add then empty add
-        HashMap<String, byte[]> toAdd = Utils.readObject(Repository.ADDMAP, HashMap.class);
+        //Update files to add and remove
         committed.putAll(toAdd);
-
-        //save to filesMap (inside if to avoid error during init)
-        if (parent != null) {
-            Tree tree = Utils.readObject(Repository.MAPS, Tree.class);
-            HashMap<String, byte[]> filesMap = tree.getFilesMap();
-            filesMap.putAll(toAdd);
-            tree.setFilesMap(filesMap);
-            Utils.writeContents(Repository.MAPS, Utils.serialize(tree));
-        }
-        //clear toAdd
-        toAdd.clear();
-        Utils.writeContents(Repository.ADDMAP, Utils.serialize(toAdd));
-
-        //Update files to remove then empty remove
-        HashMap<String, byte[]> toRemove = Utils.readObject(Repository.REMOVEMAP, HashMap.class);
         committed.keySet().removeAll(toRemove.keySet());
-        toRemove.clear();
 
-        if (committed.isEmpty()) {
-            this.ID = Utils.sha1(message);
-        } else {
-            this.ID = Utils.sha1(message, committed.keySet().toString(),
-                    committed.values().toString());
+        this.ID = computeID();
+    }
+
+    /** Returns the SHA-1 hash of this commit's canonical encoding, which
+     *  is fed to a single digest as it is produced:
+     *
+     *      parent <raw id>\n            once per parent, branch parent last
+     *      time <time>\n
+     *      files <count>\n
+     *      <name>\0<raw blob id>        once per file, in name order
+     *      \n<message>
+     *
+     *  Names cannot contain a NUL and ids are 20 bytes, so the encoding is
+     *  unambiguous, and it depends only on the contents of the commit. */
+    private ObjectId computeID() {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer buffer = ByteBuffer.allocate(ObjectStore.BUFFER_SIZE);
+        byte[] raw = new byte[ObjectId.LENGTH];
+
+        for (ObjectId parentID : new ObjectId[] {parent, branchParent}) {
+            if (parentID != null) {
+                update(md, encoder, buffer, "parent ");
+                md.update(parentID.copyTo(raw, 0));
+                md.update((byte) '\n');
+            }
         }
-        Utils.writeContents(Repository.REMOVEMAP, Utils.serialize((toRemove)));
+        update(md, encoder, buffer, "time ");
+        update(md, encoder, buffer, time);
+        update(md, encoder, buffer, "\nfiles ");
+        update(md, encoder, buffer, Integer.toString(committed.size()));
+        md.update((byte) '\n');
+        String[] names = committed.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        for (String name : names) {
+            update(md, encoder, buffer, name);
+            md.update((byte) 0);
+            md.update(Utils.fromHex(committed.get(name), raw));
+        }
+        md.update((byte) '\n');
+        update(md, encoder, buffer, message);
+        return ObjectId.fromBytes(md.digest());
+    }
+
+    /** Feeds the UTF-8 encoding of TEXT to MD through BUFFER. */
+    private static void update(MessageDigest md, CharsetEncoder encoder,
+                               ByteBuffer buffer, String text) {
+        encoder.reset();
+        CharBuffer chars = CharBuffer.wrap(text);
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, buffer, true);
+            buffer.flip();
+            md.update(buffer);
+            buffer.clear();
+        } while (result.isOverflow());
     }
 
-    public String getID() {
+    public ObjectId getID() {
         return this.ID;
     }
 
@@ -112,14 +139,14 @@ public class Commit implements Serializable {
         return this.time;
     }
 
-    public HashMap<String, byte[]> getCommitted() {
+    public HashMap<String, String> getCommitted() {
         return this.committed;
     }
 
-    public Commit getParent() {
+    public ObjectId getParentID() {
         return this.parent;
     }
-    public Commit getBranchParent() {
+    public ObjectId getBranchParentID() {
         return this.branchParent;
     }
     public String getMergeID() {
@@ -149,4 +176,3 @@ public class Commit implements Serializable {
                 + this.getMessage() + "\n" + "\n";
     }
 }
-
@@ -0,0 +1,449 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** The shape of history, kept apart from the commits themselves so that
+ *  ancestry questions can be answered without reading a single commit.
+ *
+ *  The commit-graph file starts with an IdTable, like a pack index: a
+ *  header (magic, version, commit count), a fanout table of 256 ints and
+ *  the sorted 20-byte commit ids. Then come three ints per commit: the positions of its parent and
+ *  of its branch parent in that sorted list, -1 if there is none, and its
+ *  generation number. A root commit has generation 1 and any other commit
+ *  one more than the largest generation of its parents, so a commit can
+ *  only be an ancestor of commits with a larger generation. Walks stop as
+ *  soon as they pass below the generation they are looking for.
+ *
+ *  The file is mapped, and is rewritten by repack. Commits made since then
+ *  are not in it; they are read through the CommitLoader, and their
+ *  generation numbers are worked out from their parents' the first time a
+ *  walk needs them.
+ *  @author Kyusuk Oh
+ */
+public class CommitGraph {
+
+    static final int MAGIC = 0x43475048;
+    static final int VERSION = 1;
+    /** Bytes per commit after the ids: parent, branch parent, generation. */
+    static final int DATA_SIZE = 12;
+    /** Position of a missing parent. */
+    static final int NONE = -1;
+
+    /** Marks left on commits by the merge-base walk. */
+    private static final int PARENT1 = 1;
+    private static final int PARENT2 = 2;
+    private static final int STALE = 4;
+    private static final int RESULT = 8;
+
+    private final CommitLoader commits;
+    /** The mapped file, or null if there is none. */
+    private final MappedByteBuffer graph;
+    private final int count;
+    /** The sorted ids in the file, or null if there is none. */
+    private final IdTable ids;
+    private final int dataStart;
+    /** Parents and generations of the commits that are not in the file,
+     *  as they are read. */
+    private final HashMap<ObjectId, ObjectId[]> looseParents = new HashMap<>();
+    private final HashMap<ObjectId, Integer> looseGenerations = new HashMap<>();
+
+    /** The graph stored in FILE, if it exists, falling back on COMMITS
+     *  for commits that are not in it. */
+    public CommitGraph(File file, CommitLoader commits) {
+        this.commits = commits;
+        if (!file.isFile()) {
+            this.graph = null;
+            this.count = 0;
+            this.ids = null;
+        } else {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                this.graph = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+            if (graph.getInt(0) != MAGIC || graph.getInt(4) != VERSION) {
+                throw Utils.error("Corrupt commit graph.");
+            }
+            this.count = graph.getInt(8);
+            this.ids = new IdTable(graph, count);
+        }
+        this.dataStart = IdTable.IDS_START + count * ObjectId.LENGTH;
+    }
+
+    /** Returns the number of commits in the file. */
+    public int size() {
+        return count;
+    }
+
+    /** Returns the position of commit ID in the file, or NONE if it is not
+     *  there. */
+    public int find(ObjectId id) {
+        return ids == null ? NONE : ids.find(id);
+    }
+
+    /** Returns the id of the commit at position POS. */
+    public ObjectId id(int pos) {
+        return ids.id(pos);
+    }
+
+    /** Returns the position of the parent of the commit at POS, or NONE. */
+    public int parent(int pos) {
+        return graph.getInt(dataStart + pos * DATA_SIZE);
+    }
+
+    /** Returns the position of the branch parent of the commit at POS,
+     *  or NONE. */
+    public int branchParent(int pos) {
+        return graph.getInt(dataStart + pos * DATA_SIZE + 4);
+    }
+
+    /** Returns the generation of the commit at POS. */
+    public int generation(int pos) {
+        return graph.getInt(dataStart + pos * DATA_SIZE + 8);
+    }
+
+    /** Returns the generation of commit ID. For a commit that is not in
+     *  the file this reads every commit between it and the file once. */
+    public int generation(ObjectId id) {
+        int pos = find(id);
+        if (pos != NONE) {
+            return generation(pos);
+        }
+        Integer known = looseGenerations.get(id);
+        if (known != null) {
+            return known;
+        }
+        //parents first, without recursion
+        ArrayDeque<ObjectId> stack = new ArrayDeque<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            ObjectId top = stack.peek();
+            int generation = 1;
+            boolean ready = true;
+            for (ObjectId parent : looseParents(top)) {
+                int parentPos = find(parent);
+                Integer parentGeneration = looseGenerations.get(parent);
+                if (parentPos != NONE) {
+                    parentGeneration = generation(parentPos);
+                }
+                if (parentGeneration == null) {
+                    stack.push(parent);
+                    ready = false;
+                } else {
+                    generation = Math.max(generation, parentGeneration + 1);
+                }
+            }
+            if (ready) {
+                looseGenerations.put(top, generation);
+                stack.pop();
+            }
+        }
+        return looseGenerations.get(id);
+    }
+
+    /** Returns the parents of commit ID, which is not in the file. */
+    ObjectId[] looseParents(ObjectId id) {
+        ObjectId[] parents = looseParents.get(id);
+        if (parents == null) {
+            Commit commit = commits.load(id);
+            if (commit.getBranchParentID() != null) {
+                parents = new ObjectId[] {commit.getParentID(), commit.getBranchParentID()};
+            } else if (commit.getParentID() != null) {
+                parents = new ObjectId[] {commit.getParentID()};
+            } else {
+                parents = new ObjectId[0];
+            }
+            looseParents.put(id, parents);
+        }
+        return parents;
+    }
+
+    /** Returns true if commit ANCESTOR is DESCENDANT or one of its
+     *  ancestors. Commits newer than the file are walked by loading them;
+     *  once the walk enters the file it follows parent positions, and does
+     *  not go below the generation of ANCESTOR. */
+    public boolean isAncestor(ObjectId ancestor, ObjectId descendant) {
+        int target = find(ancestor);
+        ArrayDeque<Integer> positions = new ArrayDeque<>();
+        ArrayDeque<ObjectId> loose = new ArrayDeque<>();
+        HashSet<ObjectId> seen = new HashSet<>();
+        loose.push(descendant);
+        seen.add(descendant);
+        while (!loose.isEmpty()) {
+            ObjectId id = loose.pop();
+            if (id.equals(ancestor)) {
+                return true;
+            }
+            int pos = find(id);
+            if (pos != NONE) {
+                positions.push(pos);
+                continue;
+            }
+            for (ObjectId parent : looseParents(id)) {
+                if (seen.add(parent)) {
+                    loose.push(parent);
+                }
+            }
+        }
+        //commits in the file only have ancestors in the file
+        if (target == NONE) {
+            return false;
+        }
+        int floor = generation(target);
+        BitSet visited = new BitSet(count);
+        while (!positions.isEmpty()) {
+            int pos = positions.pop();
+            if (pos == target) {
+                return true;
+            }
+            if (visited.get(pos) || generation(pos) <= floor) {
+                continue;
+            }
+            visited.set(pos);
+            int parent = parent(pos);
+            if (parent != NONE) {
+                positions.push(parent);
+            }
+            parent = branchParent(pos);
+            if (parent != NONE) {
+                positions.push(parent);
+            }
+        }
+        return false;
+    }
+
+    /** Returns the best common ancestors of commits A and B: the common
+     *  ancestors that are not ancestors of another common ancestor, by
+     *  decreasing generation and then by id. There is more than one only
+     *  when the two histories criss-cross.
+     *
+     *  Commits are painted from both sides, newest generation first, so a
+     *  commit is always reached before its parents. A commit painted from
+     *  both sides is a candidate, and everything below it is marked stale;
+     *  the walk ends as soon as every commit waiting in the queue is
+     *  stale, having visited only the commits between the two heads and
+     *  their nearest common ancestors. */
+    public List<ObjectId> mergeBases(ObjectId a, ObjectId b) {
+        if (a.equals(b)) {
+            return List.of(a);
+        }
+        Walk walk = new Walk();
+        walk.paint(walk.node(a, find(a)), PARENT1);
+        walk.paint(walk.node(b, find(b)), PARENT2);
+
+        List<Node> candidates = new ArrayList<>();
+        while (walk.live > 0) {
+            Node node = walk.poll();
+            int flags = node.flags & (PARENT1 | PARENT2 | STALE);
+            if (flags == (PARENT1 | PARENT2)) {
+                if ((node.flags & RESULT) == 0) {
+                    node.flags |= RESULT;
+                    candidates.add(node);
+                }
+                flags |= STALE;
+            }
+            for (Node parent : walk.parents(node)) {
+                if ((parent.flags & flags) != flags) {
+                    walk.paint(parent, flags);
+                }
+            }
+        }
+
+        //a candidate painted stale later is below another candidate
+        List<Node> bases = new ArrayList<>();
+        for (Node node : candidates) {
+            if ((node.flags & STALE) == 0) {
+                bases.add(node);
+            }
+        }
+        bases.sort((x, y) -> x.generation != y.generation
+                ? Integer.compare(y.generation, x.generation) : x.id.compareTo(y.id));
+        List<ObjectId> result = new ArrayList<>();
+        for (Node node : bases) {
+            boolean redundant = false;
+            for (Node other : bases) {
+                if (other != node && other.generation > node.generation
+                        && isAncestor(node.id, other.id)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(node.id);
+            }
+        }
+        return result;
+    }
+
+    /** A commit seen by the merge-base walk. */
+    private static class Node {
+        private final ObjectId id;
+        /** Position in the file, or NONE. */
+        private final int pos;
+        private final int generation;
+        private int flags;
+        /** Number of times this node is in the queue. */
+        private int queued;
+
+        Node(ObjectId id, int pos, int generation) {
+            this.id = id;
+            this.pos = pos;
+            this.generation = generation;
+        }
+    }
+
+    /** The state of one merge-base walk: the nodes seen so far and the
+     *  queue of nodes to visit, newest generation first. */
+    private class Walk {
+        private final HashMap<ObjectId, Node> nodes = new HashMap<>();
+        private final PriorityQueue<Node> queue = new PriorityQueue<>((x, y) ->
+                x.generation != y.generation
+                        ? Integer.compare(y.generation, x.generation) : x.id.compareTo(y.id));
+        /** Number of queue entries whose node is not stale. */
+        private int live;
+
+        /** Returns the node of commit ID, found at POS in the file or NONE. */
+        Node node(ObjectId id, int pos) {
+            Node node = nodes.get(id);
+            if (node == null) {
+                node = new Node(id, pos, pos == NONE ? generation(id) : generation(pos));
+                nodes.put(id, node);
+            }
+            return node;
+        }
+
+        /** Returns the parents of NODE, following positions in the file. */
+        List<Node> parents(Node node) {
+            List<Node> parents = new ArrayList<>(2);
+            if (node.pos == NONE) {
+                for (ObjectId parent : looseParents(node.id)) {
+                    parents.add(node(parent, find(parent)));
+                }
+            } else {
+                for (int parent : new int[] {parent(node.pos), branchParent(node.pos)}) {
+                    if (parent != NONE) {
+                        parents.add(node(id(parent), parent));
+                    }
+                }
+            }
+            return parents;
+        }
+
+        /** Adds FLAGS to NODE and queues it. */
+        void paint(Node node, int flags) {
+            boolean wasStale = (node.flags & STALE) != 0;
+            node.flags |= flags;
+            if (!wasStale && (node.flags & STALE) != 0) {
+                live -= node.queued;
+            }
+            node.queued += 1;
+            if ((node.flags & STALE) == 0) {
+                live += 1;
+            }
+            queue.add(node);
+        }
+
+        /** Removes and returns the newest node in the queue. */
+        Node poll() {
+            Node node = queue.poll();
+            node.queued -= 1;
+            if ((node.flags & STALE) == 0) {
+                live -= 1;
+            }
+            return node;
+        }
+    }
+
+    /** Writes to FILE the graph of the commits IDS, which must include
+     *  every ancestor of each of them, reading them through COMMITS. */
+    public static void write(File file, Collection<ObjectId> ids, CommitLoader commits) {
+        ObjectId[] sorted = ids.toArray(new ObjectId[0]);
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        int[] parents = new int[2 * n];
+        for (int pos = 0; pos < n; pos += 1) {
+            Commit commit = commits.load(sorted[pos]);
+            parents[2 * pos] = position(sorted, commit.getParentID());
+            parents[2 * pos + 1] = position(sorted, commit.getBranchParentID());
+        }
+        write(file, sorted, parents);
+    }
+
+    /** Writes to FILE the graph of the commits SORTED, in id order, whose
+     *  parent and branch parent positions are PARENTS[2 * pos] and
+     *  PARENTS[2 * pos + 1]. */
+    static void write(File file, ObjectId[] sorted, int[] parents) {
+        int n = sorted.length;
+
+        //generations, parents first, without recursion
+        int[] generations = new int[n];
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        for (int root = 0; root < n; root += 1) {
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                int pos = stack.peek();
+                if (generations[pos] != 0) {
+                    stack.pop();
+                    continue;
+                }
+                int generation = 1;
+                boolean ready = true;
+                for (int k = 0; k < 2; k += 1) {
+                    int parent = parents[2 * pos + k];
+                    if (parent == NONE) {
+                        continue;
+                    } else if (generations[parent] == 0) {
+                        stack.push(parent);
+                        ready = false;
+                    } else {
+                        generation = Math.max(generation, generations[parent] + 1);
+                    }
+                }
+                if (ready) {
+                    generations[pos] = generation;
+                    stack.pop();
+                }
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(IdTable.IDS_START
+                + n * (ObjectId.LENGTH + DATA_SIZE));
+        out.putInt(MAGIC).putInt(VERSION).putInt(n);
+        IdTable.write(out, sorted);
+        for (int pos = 0; pos < n; pos += 1) {
+            out.putInt(parents[2 * pos]).putInt(parents[2 * pos + 1]).putInt(generations[pos]);
+        }
+
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Utils.writeContents(tmp, out.array());
+        if (!tmp.renameTo(file)) {
+            throw Utils.error("Could not write commit graph.");
+        }
+    }
+
+    /** Returns the position of ID in SORTED, or NONE if ID is null. */
+    private static int position(ObjectId[] sorted, ObjectId id) {
+        if (id == null) {
+            return NONE;
+        }
+        int pos = Arrays.binarySearch(sorted, id);
+        if (pos < 0) {
+            throw Utils.error("Parent commit %s is missing.", id);
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Resolves commits by id on demand, keeping the most recently used ones in
+ *  a size-bounded LRU cache. Nothing is read until a command actually
+ *  visits a commit, so memory use does not grow with history length.
+ *  @author Kyusuk Oh
+ */
+public class CommitLoader {
+
+    /** Default number of commits kept in memory. Override with
+     *  -Dgitlet.commitCache=N. */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final ObjectStore store;
+    private final int capacity;
+    private final LinkedHashMap<ObjectId, Commit> cache;
+    private long hits;
+    private long misses;
+
+    /** A loader reading from STORE. */
+    public CommitLoader(ObjectStore store) {
+        this(store, Integer.getInteger("gitlet.commitCache", DEFAULT_CAPACITY));
+    }
+
+    public CommitLoader(ObjectStore store, int capacity) {
+        this.store = store;
+        this.capacity = Math.max(1, capacity);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ObjectId, Commit> eldest) {
+                return size() > CommitLoader.this.capacity;
+            }
+        };
+    }
+
+    /** Returns the commit with the given full ID, or null if ID is null. */
+    public Commit load(ObjectId id) {
+        if (id == null) {
+            return null;
+        }
+        Commit commit = cache.get(id);
+        if (commit != null) {
+            hits += 1;
+            return commit;
+        }
+        misses += 1;
+        commit = store.getCommit(id);
+        cache.put(id, commit);
+        return commit;
+    }
+
+    /** Adds a commit that was just created so it need not be read back. */
+    public void put(Commit commit) {
+        cache.put(commit.getID(), commit);
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /** Returns the fraction of loads served from the cache. */
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /** Returns a one-line summary of the cache counters. */
+    public String stats() {
+        return String.format("commit cache: %d/%d entries, %d hits, %d misses, hit rate %.2f",
+                cache.size(), capacity, hits, misses, hitRate());
+    }
+}
@@ -0,0 +1,252 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/** A long-running gitlet process that keeps one Repository, and with it the
+ *  commit cache, warm in memory and serves commands over the Unix domain
+ *  socket .gitlet/daemon.sock. While the socket exists, Main forwards every
+ *  command to it and copies back the output, which is exactly what the
+ *  command would have printed in-process.
+ *
+ *  A request is the argument count followed by each argument, written with
+ *  DataOutputStream.writeInt and writeUTF. The response is a series of
+ *  frames, each a stream byte (OUT or ERR), a length and that many bytes of
+ *  the command's standard output or standard error, ended by an EXIT byte
+ *  and the command's exit status. A command that throws has its stack trace
+ *  sent on ERR and exits with status 1, as it would in-process; diagnostics
+ *  from Utils.verbose are sent on ERR as well. Commands are served one at a
+ *  time.
+ *  @author Kyusuk Oh
+ */
+public class Daemon {
+
+    /** Stream bytes of the frames of a response. */
+    static final int EXIT = 0;
+    static final int OUT = 1;
+    static final int ERR = 2;
+    /** What forward returns when no daemon is listening. */
+    static final int NOT_RUNNING = -1;
+
+    private final Repository repository;
+    private boolean running;
+
+    public Daemon(Repository repository) {
+        this.repository = repository;
+    }
+
+    /** Starts a daemon in the current repository and serves requests until
+     *  it is sent "daemon stop". */
+    static void start() throws IOException {
+        if (!Repository.REPO.exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return;
+        }
+        if (Repository.DAEMON_SOCKET.exists()) {
+            if (canConnect()) {
+                System.out.println("A gitlet daemon is already running.");
+                return;
+            }
+            Repository.DAEMON_SOCKET.delete();
+        }
+        Repository repository = Utils.readObject(Repository.REPO, Repository.class);
+        new Daemon(repository).serve();
+    }
+
+    /** Accepts and runs commands until stopped. */
+    public void serve() throws IOException {
+        UnixDomainSocketAddress address =
+                UnixDomainSocketAddress.of(Repository.DAEMON_SOCKET.toPath());
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    handle(client);
+                } catch (IOException excp) {
+                    System.err.println("gitlet daemon: " + excp.getMessage());
+                }
+            }
+        } finally {
+            Repository.DAEMON_SOCKET.delete();
+        }
+    }
+
+    /** Reads one request from CLIENT, runs it and streams back its output. */
+    private void handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+        String[] args;
+        try {
+            args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i += 1) {
+                args[i] = in.readUTF();
+            }
+        } catch (EOFException excp) {
+            //a liveness probe, or a client that went away
+            return;
+        }
+
+        DataOutputStream response = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(client)));
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        PrintStream out = new PrintStream(new FrameStream(response, OUT), false);
+        PrintStream err = new PrintStream(new FrameStream(response, ERR), false);
+        System.setOut(out);
+        System.setErr(err);
+        int status = 0;
+        try {
+            if (args.length == 2 && args[0].equals("daemon") && args[1].equals("stop")) {
+                running = false;
+            } else {
+                Main.dispatch(repository, args);
+            }
+        } catch (RuntimeException excp) {
+            excp.printStackTrace();
+            status = 1;
+        } finally {
+            out.flush();
+            err.flush();
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+        response.writeByte(EXIT);
+        response.writeInt(status);
+        response.flush();
+    }
+
+    /** Buffers what is written to it and sends it to RESPONSE as frames
+     *  of stream STREAM whenever it is flushed or the buffer fills. */
+    private static class FrameStream extends OutputStream {
+        private final DataOutputStream response;
+        private final int stream;
+        private final byte[] buffer = new byte[ObjectStore.BUFFER_SIZE];
+        private int size;
+
+        FrameStream(DataOutputStream response, int stream) {
+            this.response = response;
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (size == buffer.length) {
+                flush();
+            }
+            buffer[size] = (byte) b;
+            size += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (size == buffer.length) {
+                    flush();
+                }
+                int n = Math.min(len, buffer.length - size);
+                System.arraycopy(b, off, buffer, size, n);
+                size += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (size > 0) {
+                response.writeByte(stream);
+                response.writeInt(size);
+                response.write(buffer, 0, size);
+                size = 0;
+            }
+            response.flush();
+        }
+    }
+
+    /** Sends ARGS to a running daemon, copies its output to System.out and
+     *  System.err, and returns the command's exit status. Returns
+     *  NOT_RUNNING, having done nothing, if no daemon is listening. */
+    static int forward(String[] args) throws IOException {
+        if (!Repository.DAEMON_SOCKET.exists()) {
+            return NOT_RUNNING;
+        }
+        SocketChannel channel = connect();
+        if (channel == null) {
+            return NOT_RUNNING;
+        }
+        try (channel) {
+            DataOutputStream request =
+                    new DataOutputStream(Channels.newOutputStream(channel));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+            channel.shutdownOutput();
+
+            DataInputStream response = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel)));
+            byte[] buffer = new byte[ObjectStore.BUFFER_SIZE];
+            while (true) {
+                int stream;
+                try {
+                    stream = response.readByte();
+                } catch (EOFException excp) {
+                    throw Utils.error("The gitlet daemon stopped during the command.");
+                }
+                if (stream == EXIT) {
+                    System.out.flush();
+                    System.err.flush();
+                    return response.readInt();
+                }
+                PrintStream out = stream == ERR ? System.err : System.out;
+                int length = response.readInt();
+                while (length > 0) {
+                    int n = Math.min(length, buffer.length);
+                    response.readFully(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                    length -= n;
+                }
+            }
+        }
+    }
+
+    /** Returns a channel connected to the daemon, or null if none is
+     *  listening. */
+    private static SocketChannel connect() throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(Repository.DAEMON_SOCKET.toPath()));
+            return channel;
+        } catch (IOException excp) {
+            channel.close();
+            return null;
+        }
+    }
+
+    /** Returns true if a daemon is listening on the socket. */
+    static boolean isRunning() throws IOException {
+        return Repository.DAEMON_SOCKET.exists() && canConnect();
+    }
+
+    private static boolean canConnect() throws IOException {
+        SocketChannel channel = connect();
+        if (channel == null) {
+            return false;
+        }
+        channel.close();
+        return true;
+    }
+}
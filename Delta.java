@@ -0,0 +1,155 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Binary deltas between two versions of a file, in the spirit of git's.
+ *  A delta starts with the sizes of the base and of the result, each as a
+ *  varint, followed by instructions that build the result from left to
+ *  right. An instruction byte with the high bit set copies a run of the
+ *  base, whose offset and length follow as varints; any other nonzero byte
+ *  N inserts the N literal bytes that follow it.
+ *
+ *  Matches are found by indexing every BLOCK-byte block of the base by its
+ *  hash and rolling the same hash along the target, so a few changed lines
+ *  in a large file cost a few short inserts.
+ *  @author Kyusuk Oh
+ */
+public class Delta {
+
+    /** Length of the blocks of the base that are indexed. */
+    static final int BLOCK = 16;
+    /** Most literal bytes in one insert instruction. */
+    static final int MAX_INSERT = 0x7f;
+    static final int COPY = 0x80;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** Returns a delta that turns BASE into TARGET. */
+    public static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(target.length / 8 + 16);
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int off = 0; off + BLOCK <= base.length; off += BLOCK) {
+            blocks.putIfAbsent(hash(base, off), off);
+        }
+        int highPower = 1;
+        for (int k = 1; k < BLOCK; k += 1) {
+            highPower *= PRIME;
+        }
+
+        int pending = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            Integer candidate = blocks.get(h);
+            if (candidate != null && equal(base, candidate, target, i, BLOCK)) {
+                int off = candidate;
+                int len = BLOCK;
+                while (off + len < base.length && i + len < target.length
+                        && base[off + len] == target[i + len]) {
+                    len += 1;
+                }
+                while (off > 0 && i > pending && base[off - 1] == target[i - 1]) {
+                    off -= 1;
+                    i -= 1;
+                    len += 1;
+                }
+                insert(out, target, pending, i);
+                out.write(COPY);
+                writeVarint(out, off);
+                writeVarint(out, len);
+                i += len;
+                pending = i;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+                continue;
+            }
+            if (i + BLOCK < target.length) {
+                h = (h - target[i] * highPower) * PRIME + target[i + BLOCK];
+            }
+            i += 1;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        int baseSize = readVarint(delta, pos);
+        int resultSize = readVarint(delta, pos);
+        if (baseSize != base.length) {
+            throw Utils.error("Delta does not apply to its base.");
+        }
+        byte[] result = new byte[resultSize];
+        int at = 0;
+        while (pos[0] < delta.length) {
+            int cmd = delta[pos[0]++] & 0xff;
+            if (cmd == COPY) {
+                int off = readVarint(delta, pos);
+                int len = readVarint(delta, pos);
+                System.arraycopy(base, off, result, at, len);
+                at += len;
+            } else {
+                System.arraycopy(delta, pos[0], result, at, cmd);
+                pos[0] += cmd;
+                at += cmd;
+            }
+        }
+        if (at != resultSize) {
+            throw Utils.error("Corrupt delta.");
+        }
+        return result;
+    }
+
+    /** Writes TARGET[FROM..TO) as insert instructions. */
+    private static void insert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        while (from < to) {
+            int n = Math.min(MAX_INSERT, to - from);
+            out.write(n);
+            out.write(target, from, n);
+            from += n;
+        }
+    }
+
+    private static int hash(byte[] data, int off) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + data[off + k];
+        }
+        return h;
+    }
+
+    private static boolean equal(byte[] a, int aOff, byte[] b, int bOff, int len) {
+        for (int k = 0; k < len; k += 1) {
+            if (a[aOff + k] != b[bOff + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[pos[0]++] & 0xff;
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,472 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line diffs. Both texts are first cut into lines and every distinct line
+ *  is given a small int, so the algorithms compare ints rather than bytes.
+ *
+ *  MYERS is Myers' O(ND) algorithm in its linear-space form: the middle
+ *  snake of the shortest edit script is found by searching from both ends
+ *  at once, and the two halves around it are diffed the same way.
+ *  HISTOGRAM, the default, is the variant git and JGit use: it matches the
+ *  longest run around the line that occurs least often in the region, which
+ *  is fast on large files and lines up unique lines such as declarations
+ *  rather than blank lines and braces, and splits the regions on either
+ *  side of that run until no line is rare enough, where it falls back on
+ *  Myers. Set -Dgitlet.diffAlgorithm=myers to use Myers throughout.
+ *  @author Kyusuk Oh
+ */
+public class Diff {
+
+    static final String MYERS = "myers";
+    static final String HISTOGRAM = "histogram";
+    /** Lines of context around each hunk. */
+    static final int CONTEXT = 3;
+    /** Lines occurring more often than this are never used to split. */
+    static final int MAX_CHAIN = 64;
+    /** Bytes searched for a NUL to tell binary files apart. */
+    static final int BINARY_PROBE = 8000;
+
+    /** Lines A[aStart..aEnd) replaced by lines B[bStart..bEnd). */
+    public static class Edit {
+        private final int aStart;
+        private int aEnd;
+        private final int bStart;
+        private int bEnd;
+
+        public Edit(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+
+        public int getAStart() {
+            return aStart;
+        }
+
+        public int getAEnd() {
+            return aEnd;
+        }
+
+        public int getBStart() {
+            return bStart;
+        }
+
+        public int getBEnd() {
+            return bEnd;
+        }
+
+        @Override
+        public String toString() {
+            return aStart + "," + aEnd + "->" + bStart + "," + bEnd;
+        }
+    }
+
+    /** A text cut into lines. Line I is DATA[starts[I]..starts[I + 1]),
+     *  including its newline if it has one. */
+    public static class Text {
+        private final byte[] data;
+        private final int[] starts;
+
+        public Text(byte[] data) {
+            this.data = data;
+            int n = 0;
+            for (byte b : data) {
+                if (b == '\n') {
+                    n += 1;
+                }
+            }
+            if (data.length > 0 && data[data.length - 1] != '\n') {
+                n += 1;
+            }
+            starts = new int[n + 1];
+            int line = 1;
+            for (int i = 0; i < data.length && line < n; i += 1) {
+                if (data[i] == '\n') {
+                    starts[line++] = i + 1;
+                }
+            }
+            starts[n] = data.length;
+        }
+
+        /** Returns the number of lines. */
+        public int size() {
+            return starts.length - 1;
+        }
+
+        /** Returns the bytes of the text. */
+        public byte[] getData() {
+            return data;
+        }
+
+        /** Returns the offset of the start of line I; I may be size(). */
+        public int start(int i) {
+            return starts[i];
+        }
+
+        /** Returns true if line I ends with a newline. */
+        boolean hasNewline(int i) {
+            return starts[i + 1] > starts[i] && data[starts[i + 1] - 1] == '\n';
+        }
+
+        /** Returns true if this looks like binary data rather than text. */
+        public boolean isBinary() {
+            return Diff.isBinary(data);
+        }
+    }
+
+    /** Returns true if DATA looks like binary data rather than text: it
+     *  has a NUL among its first BINARY_PROBE bytes. */
+    public static boolean isBinary(byte[] data) {
+        for (int i = 0; i < Math.min(data.length, BINARY_PROBE); i += 1) {
+            if (data[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** One line of a Text, compared by content. */
+    private static class Line {
+        private final Text text;
+        private final int index;
+        private final int hash;
+
+        Line(Text text, int index) {
+            this.text = text;
+            this.index = index;
+            int h = 0;
+            for (int i = text.starts[index]; i < text.starts[index + 1]; i += 1) {
+                h = 31 * h + text.data[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Line)) {
+                return false;
+            }
+            Line other = (Line) obj;
+            return hash == other.hash && Arrays.equals(
+                    text.data, text.starts[index], text.starts[index + 1],
+                    other.text.data, other.text.starts[other.index],
+                    other.text.starts[other.index + 1]);
+        }
+    }
+
+    /** Returns the lines of A and of B as ints, equal exactly where the
+     *  lines are. The ints are numbered from 0 and are below the total
+     *  number of lines. */
+    public static int[][] intern(Text a, Text b) {
+        HashMap<Line, Integer> ids = new HashMap<>();
+        int[][] result = new int[2][];
+        Text[] texts = {a, b};
+        for (int t = 0; t < 2; t += 1) {
+            result[t] = new int[texts[t].size()];
+            for (int i = 0; i < result[t].length; i += 1) {
+                Integer id = ids.putIfAbsent(new Line(texts[t], i), ids.size());
+                result[t][i] = id == null ? ids.size() - 1 : id;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the edits turning A into B with the algorithm named by the
+     *  gitlet.diffAlgorithm property. */
+    public static List<Edit> diff(Text a, Text b) {
+        int[][] lines = intern(a, b);
+        if (System.getProperty("gitlet.diffAlgorithm", HISTOGRAM).equals(MYERS)) {
+            return myers(lines[0], lines[1]);
+        }
+        return histogram(lines[0], lines[1]);
+    }
+
+    /** Returns the edits turning the lines A into B found by Myers. */
+    public static List<Edit> myers(int[] a, int[] b) {
+        List<Edit> edits = new ArrayList<>();
+        myers(a, 0, a.length, b, 0, b.length, edits);
+        return edits;
+    }
+
+    /** Adds to EDITS, in order, the edits turning A[aLo..aHi) into
+     *  B[bLo..bHi). The recursion is on the length of the edit script,
+     *  which halves at each level. */
+    private static void myers(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi,
+                              List<Edit> edits) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            add(edits, aLo, aHi, bLo, bHi);
+            return;
+        }
+        int[] snake = middleSnake(a, aLo, aHi, b, bLo, bHi);
+        myers(a, aLo, snake[0], b, bLo, snake[1], edits);
+        myers(a, snake[2], aHi, b, snake[3], bHi, edits);
+    }
+
+    /** Returns the start and end, as {aStart, bStart, aEnd, bEnd}, of the
+     *  middle snake of a shortest edit script turning A[aLo..aHi) into
+     *  B[bLo..bHi). Diagonal K holds the points where x - y = K; the
+     *  backward search runs over the reversed sequences, where diagonal C
+     *  is forward diagonal DELTA - C. */
+    private static int[] middleSnake(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])
+                        ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                int c = delta - k;
+                if (odd && c >= -(d - 1) && c <= d - 1 && x + backward[offset + c] >= n) {
+                    return new int[] {aLo + x0, bLo + y0, aLo + x, bLo + y};
+                }
+            }
+            for (int c = -d; c <= d; c += 2) {
+                int x = c == -d || (c != d && backward[offset + c - 1] < backward[offset + c + 1])
+                        ? backward[offset + c + 1] : backward[offset + c - 1] + 1;
+                int y = x - c;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[offset + c] = x;
+                int k = delta - c;
+                if (!odd && k >= -d && k <= d && x + forward[offset + k] >= n) {
+                    return new int[] {aHi - x, bHi - y, aHi - x0, bHi - y0};
+                }
+            }
+        }
+        throw Utils.error("No middle snake.");
+    }
+
+    /** Returns the edits turning the lines A into B found by the histogram
+     *  algorithm. Lines are non-negative ints, as intern numbers them. */
+    public static List<Edit> histogram(int[] a, int[] b) {
+        List<Edit> edits = new ArrayList<>();
+        int distinct = 0;
+        for (int line : a) {
+            distinct = Math.max(distinct, line + 1);
+        }
+        for (int line : b) {
+            distinct = Math.max(distinct, line + 1);
+        }
+        //occurrences in the current region of A, chained by position
+        int[] count = new int[distinct];
+        int[] head = new int[distinct];
+        int[] next = new int[a.length];
+        Arrays.fill(head, -1);
+
+        //regions still to diff, the leftmost on top
+        ArrayDeque<int[]> regions = new ArrayDeque<>();
+        regions.push(new int[] {0, a.length, 0, b.length});
+        while (!regions.isEmpty()) {
+            int[] region = regions.pop();
+            int aLo = region[0];
+            int aHi = region[1];
+            int bLo = region[2];
+            int bHi = region[3];
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+                aLo += 1;
+                bLo += 1;
+            }
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+                aHi -= 1;
+                bHi -= 1;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                add(edits, aLo, aHi, bLo, bHi);
+                continue;
+            }
+
+            for (int i = aHi - 1; i >= aLo; i -= 1) {
+                next[i] = head[a[i]];
+                head[a[i]] = i;
+                count[a[i]] += 1;
+            }
+            int rarest = Integer.MAX_VALUE;
+            for (int j = bLo; j < bHi; j += 1) {
+                if (count[b[j]] > 0) {
+                    rarest = Math.min(rarest, count[b[j]]);
+                }
+            }
+            //the longest run through a line occurring RAREST times
+            int bestA = -1;
+            int bestB = -1;
+            int bestLength = 0;
+            if (rarest <= MAX_CHAIN) {
+                for (int j = bLo; j < bHi; j += 1) {
+                    if (count[b[j]] != rarest) {
+                        continue;
+                    }
+                    int runEnd = j + 1;
+                    for (int i = head[b[j]]; i != -1; i = next[i]) {
+                        int s = i;
+                        int t = j;
+                        while (s > aLo && t > bLo && a[s - 1] == b[t - 1]) {
+                            s -= 1;
+                            t -= 1;
+                        }
+                        int e = i;
+                        int f = j;
+                        while (e < aHi && f < bHi && a[e] == b[f]) {
+                            e += 1;
+                            f += 1;
+                        }
+                        if (e - s > bestLength) {
+                            bestA = s;
+                            bestB = t;
+                            bestLength = e - s;
+                        }
+                        runEnd = Math.max(runEnd, f);
+                    }
+                    j = runEnd - 1;
+                }
+            }
+            for (int i = aLo; i < aHi; i += 1) {
+                head[a[i]] = -1;
+                count[a[i]] = 0;
+            }
+
+            if (rarest == Integer.MAX_VALUE) {
+                add(edits, aLo, aHi, bLo, bHi);
+            } else if (bestLength == 0) {
+                myers(a, aLo, aHi, b, bLo, bHi, edits);
+            } else {
+                regions.push(new int[] {bestA + bestLength, aHi, bestB + bestLength, bHi});
+                regions.push(new int[] {aLo, bestA, bLo, bestB});
+            }
+        }
+        return edits;
+    }
+
+    /** Appends the edit A[aLo..aHi) -> B[bLo..bHi) to EDITS, joining it to
+     *  the last one if they touch. Empty edits are dropped. */
+    private static void add(List<Edit> edits, int aLo, int aHi, int bLo, int bHi) {
+        if (aLo == aHi && bLo == bHi) {
+            return;
+        }
+        if (!edits.isEmpty()) {
+            Edit last = edits.get(edits.size() - 1);
+            if (last.aEnd == aLo && last.bEnd == bLo) {
+                last.aEnd = aHi;
+                last.bEnd = bHi;
+                return;
+            }
+        }
+        edits.add(new Edit(aLo, aHi, bLo, bHi));
+    }
+
+    /** Writes to OUT the unified diff of file NAME, whose contents go from
+     *  BEFORE to AFTER. Either is null if the file does not exist on that
+     *  side. */
+    public static void writeFile(OutputStream out, String name, byte[] before, byte[] after)
+            throws IOException {
+        Text a = new Text(before == null ? new byte[0] : before);
+        Text b = new Text(after == null ? new byte[0] : after);
+        String aName = before == null ? "/dev/null" : "a/" + name;
+        String bName = after == null ? "/dev/null" : "b/" + name;
+        write(out, "diff --git a/" + name + " b/" + name + "\n");
+        if (a.isBinary() || b.isBinary()) {
+            write(out, "Binary files " + aName + " and " + bName + " differ\n");
+            return;
+        }
+        write(out, "--- " + aName + "\n+++ " + bName + "\n");
+        writeHunks(out, a, b, diff(a, b));
+    }
+
+    /** Writes to OUT the EDITS turning A into B as the hunks of a unified
+     *  diff, with CONTEXT lines of context. */
+    public static void writeHunks(OutputStream out, Text a, Text b, List<Edit> edits)
+            throws IOException {
+        int first = 0;
+        while (first < edits.size()) {
+            //join edits whose contexts overlap into one hunk
+            int last = first;
+            while (last + 1 < edits.size()
+                    && edits.get(last + 1).aStart - edits.get(last).aEnd <= 2 * CONTEXT) {
+                last += 1;
+            }
+            Edit start = edits.get(first);
+            Edit end = edits.get(last);
+            int aFrom = Math.max(0, start.aStart - CONTEXT);
+            int bFrom = start.bStart - (start.aStart - aFrom);
+            int aTo = Math.min(a.size(), end.aEnd + CONTEXT);
+            int bTo = end.bEnd + (aTo - end.aEnd);
+            write(out, "@@ -" + range(aFrom, aTo - aFrom) + " +" + range(bFrom, bTo - bFrom)
+                    + " @@\n");
+            int at = aFrom;
+            for (int e = first; e <= last; e += 1) {
+                Edit edit = edits.get(e);
+                writeLines(out, ' ', a, at, edit.aStart);
+                writeLines(out, '-', a, edit.aStart, edit.aEnd);
+                writeLines(out, '+', b, edit.bStart, edit.bEnd);
+                at = edit.aEnd;
+            }
+            writeLines(out, ' ', a, at, aTo);
+            first = last + 1;
+        }
+    }
+
+    /** Returns a hunk range of LENGTH lines from line START, counted from
+     *  0, in the form unified diffs use. */
+    private static String range(int start, int length) {
+        if (length == 1) {
+            return Integer.toString(start + 1);
+        } else if (length == 0) {
+            return start + ",0";
+        }
+        return (start + 1) + "," + length;
+    }
+
+    /** Writes lines FROM..TO of TEXT, each after PREFIX. */
+    private static void writeLines(OutputStream out, char prefix, Text text, int from, int to)
+            throws IOException {
+        for (int i = from; i < to; i += 1) {
+            out.write(prefix);
+            out.write(text.data, text.start(i), text.start(i + 1) - text.start(i));
+            if (!text.hasNewline(i)) {
+                write(out, "\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -7,27 +7,55 @@ import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
 import java.security.Permission;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import gitlet.Bitmap;
+import gitlet.Commit;
+import gitlet.Delta;
+import gitlet.Diff;
+import gitlet.Hasher;
+import gitlet.Index;
+import gitlet.MergePlan;
+import gitlet.CommitGraph;
+import gitlet.CommitLoader;
+import gitlet.ObjectId;
+import gitlet.ObjectStore;
+import gitlet.Pack;
+import gitlet.Refs;
+import gitlet.Repository;
 
 import static org.junit.Assert.*;
 
@@ -1499,4 +1527,1041 @@ public class GitletTests {
         assertFileEquals(NOTF, "F.txt");
         assertFileEquals(G, "G.txt");
     }
+
+    /**
+     * Heap size given to the JVMs started by test45_largeFile and
+     * test57_largeFileMerge, which commit, check out and merge files several
+     * times that size.
+     */
+    private static final String SMALL_HEAP = "-Xmx32m";
+    private static final int LARGE_FILE_MB = 96;
+    private static final int LARGE_MERGE_MB = 40;
+
+    /**
+     * Runs the given Gitlet command in a separate JVM limited to SMALL_HEAP,
+     * asserts that it succeeds and returns its output.
+     */
+    public static String smallHeapGitletCommand(String... args) {
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                SMALL_HEAP, "-cp", System.getProperty("java.class.path"), "gitlet.Main"));
+        command.addAll(List.of(args));
+        OG_OUT.println(COMMAND_BASE + createCommand(args) + " (" + SMALL_HEAP + ")");
+        try {
+            Process process = new ProcessBuilder(command)
+                    .directory(new File(System.getProperty("user.dir")))
+                    .redirectErrorStream(true)
+                    .start();
+            String output = new String(process.getInputStream().readAllBytes());
+            assertEquals("gitlet " + createCommand(args) + " failed:\n" + output,
+                    0, process.waitFor());
+            return output;
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void test45_largeFile() throws IOException {
+        byte[] chunk = new byte[1 << 20];
+        Random random = new Random(45);
+        try (OutputStream out = Files.newOutputStream(Path.of("big.bin"))) {
+            for (int i = 0; i < LARGE_FILE_MB; i += 1) {
+                random.nextBytes(chunk);
+                out.write(chunk);
+            }
+        }
+        Files.copy(Path.of("big.bin"), Path.of("expected.bin"));
+        smallHeapGitletCommand("init");
+        smallHeapGitletCommand("add", "big.bin");
+        smallHeapGitletCommand("commit", "large file");
+        deleteFile("big.bin");
+        smallHeapGitletCommand("checkout", "--", "big.bin");
+        assertEquals(-1L, Files.mismatch(Path.of("expected.bin"), Path.of("big.bin")));
+    }
+
+    @Test
+    public void test46_mergeAfterRepack() {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "b1"}, "");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h.txt"}, "");
+        gitletCommand(new String[]{"repack"}, "");
+        gitletCommand(new String[]{"branch", "b2"}, "");
+        gitletCommand(new String[]{"rm", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Remove f.txt"}, "");
+        gitletCommand(new String[]{"merge", "b1"}, "Given branch is an ancestor of the current branch.");
+        gitletCommand(new String[]{"checkout", "b2"}, "");
+        gitletCommand(new String[]{"merge", "main"}, "Current branch fast-forwarded.");
+        assertFileDoesNotExist("f.txt");
+        gitletCommand(new String[]{"repack"}, "");
+        gitletCommand(new String[]{"merge", "b1"}, "Given branch is an ancestor of the current branch.");
+    }
+
+    /** Commits in the synthetic history of test47. */
+    static final int LARGE_HISTORY = 100_000;
+    static final String SYNTHETIC_TIME = "Thu Jan 1 00:00:00 1970 +0000";
+
+    @Test
+    public void test47_mergeBaseLargeHistory() {
+        gitletCommand(new String[]{"init"}, "");
+        ObjectStore store = new ObjectStore();
+        CommitLoader loader = new CommitLoader(store);
+
+        //a long line of history, then two branches that criss-cross
+        Commit tip = loader.load(Refs.head());
+        for (int i = 0; i < LARGE_HISTORY; i += 1) {
+            tip = syntheticCommit(store, "line " + i, tip, null);
+        }
+        Commit a0 = syntheticCommit(store, "a0", tip, null);
+        Commit b0 = syntheticCommit(store, "b0", tip, null);
+        Commit side = syntheticCommit(store, "side", a0, null);
+        Commit a = a0;
+        Commit b = b0;
+        Commit prevA = a;
+        Commit prevB = b;
+        for (int k = 1; k <= 5; k += 1) {
+            Commit nextA = syntheticCommit(store, "a" + k, a, b);
+            Commit nextB = syntheticCommit(store, "b" + k, b, a);
+            prevA = a;
+            prevB = b;
+            a = nextA;
+            b = nextB;
+        }
+        List<ObjectId> expected = new ArrayList<>(List.of(prevA.getID(), prevB.getID()));
+        expected.sort(null);
+
+        CommitGraph.write(Repository.COMMIT_GRAPH, store.commitIDs(), loader);
+        CommitGraph graph = new CommitGraph(Repository.COMMIT_GRAPH, loader);
+        List<ObjectId> bases = new ArrayList<>(graph.mergeBases(a.getID(), b.getID()));
+        bases.sort(null);
+        assertEquals(expected, bases);
+        assertEquals(List.of(a0.getID()), graph.mergeBases(side.getID(), b.getID()));
+        assertEquals(List.of(tip.getID()), graph.mergeBases(side.getID(), b0.getID()));
+        assertEquals(List.of(side.getID()), graph.mergeBases(side.getID(), side.getID()));
+        assertTrue(graph.isAncestor(tip.getID(), a.getID()));
+        assertFalse(graph.isAncestor(side.getID(), b.getID()));
+
+        //new loose commits on top of the graph file
+        Commit c = syntheticCommit(store, "c", a, null);
+        Commit d = syntheticCommit(store, "d", side, b);
+        graph = new CommitGraph(Repository.COMMIT_GRAPH, loader);
+        bases = new ArrayList<>(graph.mergeBases(c.getID(), d.getID()));
+        bases.sort(null);
+        assertEquals(expected, bases);
+        assertEquals(List.of(side.getID()), graph.mergeBases(d.getID(), side.getID()));
+    }
+
+    /** Stores and returns a commit with no files, message MESSAGE and the
+     *  given parents. */
+    private static Commit syntheticCommit(ObjectStore store, String message,
+                                          Commit parent, Commit branchParent) {
+        HashMap<String, String> none = new HashMap<>();
+        Commit commit = branchParent == null
+                ? new Commit(message, SYNTHETIC_TIME, parent, none, none)
+                : new Commit(message, SYNTHETIC_TIME, parent, branchParent, none, none);
+        store.putCommit(commit);
+        return commit;
+    }
+
+    @Test
+    public void test48_revList() {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "b1"}, "");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h.txt"}, "");
+        gitletCommand(new String[]{"repack"}, "");
+        gitletCommand(new String[]{"rm", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Remove f.txt"}, "");
+        String packed = gitletCommandP(new String[]{"find", "Add h.txt"},
+                "([a-f0-9]{40})").group(1);
+        String loose = gitletCommandP(new String[]{"find", "Remove f.txt"},
+                "([a-f0-9]{40})").group(1);
+        List<String> expected = new ArrayList<>(List.of(packed, loose));
+        expected.sort(null);
+        gitletCommand(new String[]{"rev-list", "main", "^b1"}, String.join("\n", expected));
+        gitletCommand(new String[]{"rev-list", "b1", "^main"}, "");
+        gitletCommand(new String[]{"rev-list", "--unreachable"}, "");
+        gitletCommand(new String[]{"reset", packed}, "");
+        gitletCommand(new String[]{"rev-list", "--unreachable"}, loose);
+        gitletCommand(new String[]{"rev-list", "b2"}, "A branch with that name does not exist.");
+    }
+
+    @Test
+    public void test49_bitmapOperations() {
+        Random random = new Random(49);
+        for (int round = 0; round < 20; round += 1) {
+            //values over a few containers, some sparse and some dense
+            int range = 1 + random.nextInt(4 << 16);
+            BitSet[] sets = {new BitSet(), new BitSet()};
+            Bitmap[] bitmaps = {new Bitmap(), new Bitmap()};
+            for (int k = 0; k < 2; k += 1) {
+                int count = random.nextInt(range / (1 + random.nextInt(40)) + 1);
+                for (int i = 0; i < count; i += 1) {
+                    int value = random.nextInt(range);
+                    sets[k].set(value);
+                    bitmaps[k].add(value);
+                }
+            }
+            assertBitmapEquals(sets[0], bitmaps[0]);
+
+            BitSet union = (BitSet) sets[0].clone();
+            union.or(sets[1]);
+            Bitmap bitmapUnion = bitmaps[0].copy();
+            bitmapUnion.or(bitmaps[1]);
+            assertBitmapEquals(union, bitmapUnion);
+
+            BitSet intersection = (BitSet) sets[0].clone();
+            intersection.and(sets[1]);
+            Bitmap bitmapIntersection = bitmaps[0].copy();
+            bitmapIntersection.and(bitmaps[1]);
+            assertBitmapEquals(intersection, bitmapIntersection);
+
+            BitSet difference = (BitSet) union.clone();
+            difference.andNot(sets[1]);
+            Bitmap bitmapDifference = bitmapUnion.copy();
+            bitmapDifference.andNot(bitmaps[1]);
+            assertBitmapEquals(difference, bitmapDifference);
+
+            ByteBuffer buffer = ByteBuffer.allocate(bitmapDifference.serializedSize());
+            bitmapDifference.write(buffer);
+            buffer.flip();
+            assertBitmapEquals(difference, Bitmap.read(buffer));
+        }
+    }
+
+    /** Asserts that BITMAP holds exactly the values in EXPECTED. */
+    private static void assertBitmapEquals(BitSet expected, Bitmap bitmap) {
+        assertEquals(expected.cardinality(), bitmap.cardinality());
+        BitSet actual = new BitSet();
+        bitmap.forEach(actual::set);
+        assertEquals(expected, actual);
+        for (int value = expected.nextSetBit(0); value >= 0; value = expected.nextSetBit(value + 1)) {
+            assertTrue(bitmap.contains(value));
+        }
+    }
+
+    @Test
+    public void test50_diff() throws IOException {
+        i_setup2();
+        String wug = Files.readString(WUG).stripTrailing();
+        String notwug = Files.readString(NOTWUG).stripTrailing();
+        String changeF = """
+                diff --git a/f.txt b/f.txt
+                --- a/f.txt
+                +++ b/f.txt
+                @@ -1 +1 @@
+                -%s
+                +%s
+                """.formatted(wug, notwug);
+        gitletCommand(new String[]{"diff"}, "");
+        writeFile(NOTWUG, "f.txt");
+        gitletCommand(new String[]{"diff"}, changeF);
+        gitletCommand(new String[]{"diff", "--", "g.txt"}, "");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"rm", "g.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f, remove g"}, "");
+        String first = gitletCommandP(new String[]{"find", "Two files"}, "([a-f0-9]{40})").group(1);
+        String second = gitletCommandP(new String[]{"find", "Change f, remove g"},
+                "([a-f0-9]{40})").group(1);
+        gitletCommand(new String[]{"diff", first.substring(0, 8), second}, changeF + """
+                diff --git a/g.txt b/g.txt
+                --- a/g.txt
+                +++ /dev/null
+                @@ -1 +0,0 @@
+                -%s
+                """.formatted(notwug));
+        gitletCommand(new String[]{"diff", second, "--", "f.txt"}, "");
+        gitletCommand(new String[]{"diff", first, second, "third"}, "Incorrect operands.");
+    }
+
+    @Test
+    public void test51_lineMerge() throws IOException {
+        i_setup2();
+        String lines = "one\ntwo\nthree\nfour\nfive\nsix\nseven\neight\n";
+        Files.writeString(Path.of("m.txt"), lines);
+        Files.writeString(Path.of("n.txt"), lines);
+        gitletCommand(new String[]{"add", "m.txt"}, "");
+        gitletCommand(new String[]{"add", "n.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add m.txt and n.txt"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        Files.writeString(Path.of("m.txt"), lines.replace("one", "ONE").replace("four", "FOUR"));
+        Files.writeString(Path.of("n.txt"), lines.replace("two", "TWO"));
+        gitletCommand(new String[]{"add", "m.txt"}, "");
+        gitletCommand(new String[]{"add", "n.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change m.txt and n.txt"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        Files.writeString(Path.of("m.txt"), lines.replace("four", "4").replace("eight", "EIGHT"));
+        Files.writeString(Path.of("n.txt"), lines.replace("seven", "SEVEN"));
+        gitletCommand(new String[]{"add", "m.txt"}, "");
+        gitletCommand(new String[]{"add", "n.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change m.txt and n.txt elsewhere"}, "");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "Encountered a merge conflict.");
+        assertEquals("ONE\ntwo\nthree\n<<<<<<< HEAD\nFOUR\n=======\n4\n>>>>>>>\n"
+                        + "five\nsix\nseven\nEIGHT\n",
+                Files.readString(Path.of("m.txt")));
+        assertEquals(lines.replace("two", "TWO").replace("seven", "SEVEN"),
+                Files.readString(Path.of("n.txt")));
+    }
+
+    @Test
+    public void test52_mergePlan() {
+        HashMap<String, String> split = new HashMap<>();
+        HashMap<String, String> head = new HashMap<>();
+        HashMap<String, String> other = new HashMap<>();
+        //unchanged, changed on one side, deleted on one side, changed alike
+        split.put("same", "1");
+        head.put("same", "1");
+        other.put("same", "1");
+        split.put("ours", "1");
+        head.put("ours", "2");
+        other.put("ours", "1");
+        split.put("theirs", "1");
+        head.put("theirs", "1");
+        other.put("theirs", "2");
+        split.put("gone", "1");
+        head.put("gone", "1");
+        split.put("alike", "1");
+        head.put("alike", "2");
+        other.put("alike", "2");
+        //changed differently, deleted against changed, added differently
+        split.put("both", "1");
+        head.put("both", "2");
+        other.put("both", "3");
+        split.put("kept", "1");
+        other.put("kept", "2");
+        head.put("added", "1");
+        other.put("added", "2");
+        other.put("new", "1");
+        MergePlan plan = new MergePlan(split, head, other);
+        assertEquals(Map.of("theirs", "2", "new", "1"), plan.getTakes());
+        assertEquals(Set.of("gone"), plan.getDeletes());
+        assertEquals(3, plan.getMerges());
+        assertEquals(6, plan.size());
+    }
+
+    @Test
+    public void test53_parallelMerge() {
+        gitletCommand(new String[]{"init"}, "");
+        ObjectStore store = new ObjectStore();
+        HashMap<String, String> split = new HashMap<>();
+        HashMap<String, String> head = new HashMap<>();
+        HashMap<String, String> other = new HashMap<>();
+        Random random = new Random(53);
+        for (int f = 0; f < 200; f += 1) {
+            StringBuilder base = new StringBuilder();
+            for (int i = 0; i < 50; i += 1) {
+                base.append("line ").append(random.nextInt(20)).append('\n');
+            }
+            String text = base.toString();
+            String name = "file" + f;
+            split.put(name, store.put(text.getBytes()));
+            head.put(name, store.put((random.nextInt(10) + text).getBytes()));
+            //every fifth file also changes the first line, and conflicts
+            other.put(name, store.put(((f % 5 == 0 ? "x" : "") + text + random.nextInt(10)
+                    + (f % 3 == 0 ? "" : "\n")).getBytes()));
+        }
+        MergePlan serial = new MergePlan(split, head, other);
+        serial.resolve(store, 1);
+        MergePlan parallel = new MergePlan(split, head, other);
+        parallel.resolve(store, 8);
+        assertEquals(0, parallel.getMerges());
+        assertEquals(serial.getTakes(), parallel.getTakes());
+        assertEquals(40, serial.conflicts());
+        assertEquals(40, parallel.conflicts());
+        assertEquals(200, parallel.getTakes().size());
+    }
+
+    @Test
+    public void test54_repackSplitsPacks() {
+        i_setup2();
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h.txt"}, "");
+        writeFile(WUG3, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f.txt"}, "");
+        System.setProperty("gitlet.maxPackSize", "1500");
+        try {
+            gitletCommand(new String[]{"repack"}, "");
+        } finally {
+            System.clearProperty("gitlet.maxPackSize");
+        }
+        String[] packs = new File(".gitlet/packs").list();
+        assertTrue(Arrays.stream(packs).filter(n -> n.endsWith(".pack")).count() > 1);
+        assertTrue(Arrays.stream(packs).noneMatch(n -> n.startsWith("tmp")));
+        for (String pack : packs) {
+            assertTrue(new File(".gitlet/packs", pack).length() <= 1500
+                    || pack.endsWith(".idx"));
+        }
+        gitletCommand(new String[]{"rm", "f.txt"}, "");
+        gitletCommand(new String[]{"checkout", "--", "f.txt"}, "");
+        assertFileEquals(WUG3, "f.txt");
+        String first = gitletCommandP(new String[]{"find", "Two files"}, "([a-f0-9]{40})").group(1);
+        gitletCommand(new String[]{"checkout", first, "--", "f.txt"}, "");
+        assertFileEquals(WUG, "f.txt");
+        gitletCommand(new String[]{"repack"}, "");
+        assertEquals(1, Arrays.stream(new File(".gitlet/packs").list())
+                .filter(n -> n.endsWith(".pack")).count());
+    }
+
+    @Test
+    public void test55_diffAlgorithms() {
+        Random random = new Random(55);
+        for (int round = 0; round < 2000; round += 1) {
+            int[] a = randomLines(random, random.nextInt(40), 1 + random.nextInt(8));
+            int[] b = randomLines(random, random.nextInt(40), 1 + random.nextInt(8));
+            //a shortest edit script deletes and inserts everything off the LCS
+            int[][] lcs = new int[a.length + 1][b.length + 1];
+            for (int i = a.length - 1; i >= 0; i -= 1) {
+                for (int j = b.length - 1; j >= 0; j -= 1) {
+                    lcs[i][j] = a[i] == b[j] ? lcs[i + 1][j + 1] + 1
+                            : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+                }
+            }
+            List<Diff.Edit> myers = Diff.myers(a, b);
+            assertArrayEquals(b, applyEdits(a, b, myers));
+            int changed = 0;
+            for (Diff.Edit edit : myers) {
+                changed += edit.getAEnd() - edit.getAStart() + edit.getBEnd() - edit.getBStart();
+            }
+            assertEquals(a.length + b.length - 2 * lcs[0][0], changed);
+            assertArrayEquals(b, applyEdits(a, b, Diff.histogram(a, b)));
+        }
+    }
+
+    /** Returns N random lines numbered below DISTINCT. */
+    private static int[] randomLines(Random random, int n, int distinct) {
+        int[] lines = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            lines[i] = random.nextInt(distinct);
+        }
+        return lines;
+    }
+
+    /** Returns the lines of A with EDITS applied, taking inserted lines
+     *  from B, after checking that the edits are in order and apart. */
+    private static int[] applyEdits(int[] a, int[] b, List<Diff.Edit> edits) {
+        List<Integer> result = new ArrayList<>();
+        int at = 0;
+        int bAt = 0;
+        for (Diff.Edit edit : edits) {
+            assertTrue(edit.getAStart() >= at && edit.getBStart() >= bAt);
+            assertEquals(edit.getAStart() - at, edit.getBStart() - bAt);
+            for (int i = at; i < edit.getAStart(); i += 1) {
+                result.add(a[i]);
+            }
+            for (int j = edit.getBStart(); j < edit.getBEnd(); j += 1) {
+                result.add(b[j]);
+            }
+            at = edit.getAEnd();
+            bAt = edit.getBEnd();
+        }
+        for (int i = at; i < a.length; i += 1) {
+            result.add(a[i]);
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void test56_mergeResultIsChunked() throws IOException {
+        System.setProperty("gitlet.chunkThreshold", "4096");
+        try {
+            i_setup2();
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 2000; i += 1) {
+                text.append("generated line ").append(i).append('\n');
+            }
+            String lines = text.toString();
+            Files.writeString(Path.of("big.txt"), lines);
+            gitletCommand(new String[]{"add", "big.txt"}, "");
+            gitletCommand(new String[]{"commit", "Add big.txt"}, "");
+            gitletCommand(new String[]{"branch", "other"}, "");
+            Files.writeString(Path.of("big.txt"), lines.replace("line 10\n", "line ten\n"));
+            gitletCommand(new String[]{"add", "big.txt"}, "");
+            gitletCommand(new String[]{"commit", "Change line 10"}, "");
+            gitletCommand(new String[]{"checkout", "other"}, "");
+            Files.writeString(Path.of("big.txt"), lines.replace("line 1990\n", "line end\n"));
+            gitletCommand(new String[]{"add", "big.txt"}, "");
+            gitletCommand(new String[]{"commit", "Change line 1990"}, "");
+            gitletCommand(new String[]{"checkout", "main"}, "");
+            gitletCommand(new String[]{"merge", "other"}, "");
+            byte[] merged = Files.readAllBytes(Path.of("big.txt"));
+            assertEquals(lines.replace("line 10\n", "line ten\n")
+                    .replace("line 1990\n", "line end\n"), new String(merged));
+            assertTrue(new ObjectStore().isChunked(new Hasher().hash(merged)));
+        } finally {
+            System.clearProperty("gitlet.chunkThreshold");
+        }
+    }
+
+    /** Writes about MB megabytes of numbered lines to NAME, with line
+     *  CHANGED reading TEXT instead. */
+    private static void writeLargeText(String name, int mb, int changed, String text)
+            throws IOException {
+        try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(Path.of(name)))) {
+            for (int i = 0; i < mb * (1 << 20) / 32; i += 1) {
+                String line = i == changed ? text : String.format("generated line %15d", i);
+                out.write((line + "\n").getBytes());
+            }
+        }
+    }
+
+    @Test
+    public void test57_largeFileMerge() throws IOException {
+        writeLargeText("big.txt", LARGE_MERGE_MB, -1, null);
+        smallHeapGitletCommand("init");
+        smallHeapGitletCommand("add", "big.txt");
+        smallHeapGitletCommand("commit", "large file");
+        smallHeapGitletCommand("branch", "other");
+        writeLargeText("big.txt", LARGE_MERGE_MB, 100, "changed on main");
+        smallHeapGitletCommand("add", "big.txt");
+        smallHeapGitletCommand("commit", "change on main");
+        smallHeapGitletCommand("checkout", "other");
+        writeLargeText("big.txt", LARGE_MERGE_MB, 100, "changed on other");
+        smallHeapGitletCommand("add", "big.txt");
+        smallHeapGitletCommand("commit", "change on other");
+        smallHeapGitletCommand("checkout", "main");
+        assertEquals("Encountered a merge conflict.\n",
+                smallHeapGitletCommand("merge", "other"));
+        try (InputStream in = Files.newInputStream(Path.of("big.txt"))) {
+            assertEquals("<<<<<<< HEAD\n", new String(in.readNBytes(13)));
+        }
+        //both sides whole
+        assertTrue(Files.size(Path.of("big.txt")) > (long) LARGE_MERGE_MB << 20);
+    }
+
+    @Test
+    public void test58_deleteModifyConflicts() throws IOException {
+        i_setup2();
+        Files.writeString(Path.of("e.txt"), "");
+        Files.writeString(Path.of("c.txt"), "content\n");
+        gitletCommand(new String[]{"add", "e.txt"}, "");
+        gitletCommand(new String[]{"add", "c.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add e.txt and c.txt"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"rm", "e.txt"}, "");
+        gitletCommand(new String[]{"rm", "c.txt"}, "");
+        gitletCommand(new String[]{"commit", "Remove e.txt and c.txt"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        Files.writeString(Path.of("e.txt"), "content\n");
+        Files.writeString(Path.of("c.txt"), "");
+        gitletCommand(new String[]{"add", "e.txt"}, "");
+        gitletCommand(new String[]{"add", "c.txt"}, "");
+        gitletCommand(new String[]{"commit", "Fill e.txt, empty c.txt"}, "");
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "Encountered a merge conflict.");
+        assertEquals("<<<<<<< HEAD\n=======\ncontent\n>>>>>>>\n",
+                Files.readString(Path.of("e.txt")));
+        assertEquals("<<<<<<< HEAD\n=======\n>>>>>>>\n", Files.readString(Path.of("c.txt")));
+    }
+
+    /** Starts java gitlet.Main ARGS in the testing directory with the
+     *  system properties PROPERTIES, keeping its output and errors apart. */
+    private static Process startGitlet(List<String> properties, String... args)
+            throws IOException {
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+        command.addAll(properties);
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), "gitlet.Main"));
+        command.addAll(List.of(args));
+        OG_OUT.println(COMMAND_BASE + createCommand(args) + " " + properties);
+        return new ProcessBuilder(command)
+                .directory(new File(System.getProperty("user.dir")))
+                .start();
+    }
+
+    @Test
+    public void test59_daemon() throws IOException, InterruptedException {
+        i_setup2();
+        writeFile(WUG2, "h.txt");
+        Process daemon = startGitlet(List.of("-Dgitlet.verbose=true"), "daemon");
+        String[][] reads = {{"status"}, {"log"}, {"find", "Three files"}, {"checkout", "nope"}};
+        String[] forwarded = new String[reads.length];
+        try {
+            for (int i = 0; !Files.exists(Path.of(".gitlet", "daemon.sock")); i += 1) {
+                assertTrue("daemon did not start", i < 100 && daemon.isAlive());
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+            gitletCommand(new String[]{"add", "h.txt"}, "");
+            gitletCommand(new String[]{"commit", "Three files"}, "");
+            for (int i = 0; i < reads.length; i += 1) {
+                runGitletCommand(reads[i]);
+                forwarded[i] = getOutput();
+            }
+
+            //a command that throws fails in the client, with the daemon's trace
+            Process client = startGitlet(List.of(), "add");
+            String out = new String(client.getInputStream().readAllBytes());
+            String err = new String(client.getErrorStream().readAllBytes());
+            assertEquals(1, client.waitFor());
+            assertEquals("", out);
+            assertTrue(err, err.contains("ArrayIndexOutOfBoundsException"));
+            //diagnostics come back on the client's standard error
+            client = startGitlet(List.of(), "status");
+            out = new String(client.getInputStream().readAllBytes());
+            err = new String(client.getErrorStream().readAllBytes());
+            assertEquals(0, client.waitFor());
+            assertEquals(forwarded[0], out);
+            assertTrue(err, err.contains("commit cache:"));
+        } finally {
+            gitletCommand(new String[]{"daemon", "stop"}, "");
+            daemon.waitFor();
+        }
+        assertEquals("", new String(daemon.getErrorStream().readAllBytes()));
+        assertFalse(Files.exists(Path.of(".gitlet", "daemon.sock")));
+        //the same commands run in-process print the same
+        for (int i = 0; i < reads.length; i += 1) {
+            runGitletCommand(reads[i]);
+            assertEquals(createCommand(reads[i]), forwarded[i], getOutput());
+        }
+    }
+
+    @Test
+    public void test60_statusSections() throws IOException {
+        i_setup2();
+        Files.writeString(Path.of("r.txt"), "before\n");
+        gitletCommand(new String[]{"add", "r.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add r.txt"}, "");
+        //same size and modification time as committed, inside the racy window
+        FileTime mtime = Files.getLastModifiedTime(Path.of("r.txt"));
+        Files.writeString(Path.of("r.txt"), "after!\n");
+        Files.setLastModifiedTime(Path.of("r.txt"), mtime);
+
+        writeFile(WUG2, "f.txt");
+        deleteFile("g.txt");
+        writeFile(WUG, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        writeFile(NOTWUG, "h.txt");
+        writeFile(WUG, "k.txt");
+        gitletCommand(new String[]{"add", "k.txt"}, "");
+        deleteFile("k.txt");
+        writeFile(WUG3, "u.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                h.txt
+                k.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+                f.txt (modified)
+                g.txt (deleted)
+                h.txt (modified)
+                k.txt (deleted)
+                r.txt (modified)
+
+                === Untracked Files ===
+                u.txt
+
+                """);
+    }
+
+    /** Returns the number of leading hex digits A and B share. */
+    private static int sharedDigits(String a, String b) {
+        int shared = 0;
+        while (shared < a.length() && a.charAt(shared) == b.charAt(shared)) {
+            shared += 1;
+        }
+        return shared;
+    }
+
+    /** Returns the length of the shortest prefix of ID that no other id in
+     *  IDS starts with. */
+    private static int uniqueDigits(String id, List<String> ids) {
+        int length = 1;
+        for (String other : ids) {
+            if (!other.equals(id)) {
+                length = Math.max(length, sharedDigits(id, other) + 1);
+            }
+        }
+        return length;
+    }
+
+    @Test
+    public void test61_commitPrefixes() throws IOException {
+        i_setup2();
+        //commit until two commit ids share a first digit
+        Map<Character, Integer> versions = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        Pattern head = Pattern.compile("commit ([a-f0-9]+)");
+        //every commit in the repository, starting with the two of i_setup2
+        List<String> all = new ArrayList<>();
+        runGitletCommand(new String[]{"log"});
+        for (Matcher m = head.matcher(getOutput()); m.find(); ) {
+            all.add(m.group(1));
+        }
+        int first = -1;
+        for (int i = 0; first < 0; i += 1) {
+            Files.writeString(Path.of("f.txt"), "version " + i + "\n");
+            gitletCommand(new String[]{"add", "f.txt"}, "");
+            gitletCommand(new String[]{"commit", "Version " + i}, "");
+            runGitletCommand(new String[]{"log"});
+            Matcher m = head.matcher(getOutput());
+            assertTrue(m.find());
+            ids.add(m.group(1));
+            all.add(m.group(1));
+            Integer other = versions.putIfAbsent(m.group(1).charAt(0), i);
+            if (other != null) {
+                first = other;
+            }
+        }
+        int second = ids.size() - 1;
+        String a = ids.get(first);
+        String b = ids.get(second);
+        String ambiguous = a.substring(0, sharedDigits(a, b));
+        String unique = a.substring(0, uniqueDigits(a, all));
+        String unknown = a.substring(0, 39) + (a.charAt(39) == '0' ? '1' : '0');
+
+        gitletCommand(new String[]{"checkout", ambiguous, "--", "f.txt"},
+                "Commit id " + ambiguous + " is ambiguous.");
+        gitletCommand(new String[]{"reset", ambiguous},
+                "Commit id " + ambiguous + " is ambiguous.");
+        gitletCommand(new String[]{"checkout", unknown, "--", "f.txt"},
+                "No commit with that id exists.");
+        gitletCommand(new String[]{"reset", unknown}, "No commit with that id exists.");
+        assertEquals("version " + second + "\n", Files.readString(Path.of("f.txt")));
+
+        gitletCommand(new String[]{"checkout", unique, "--", "f.txt"}, "");
+        assertEquals("version " + first + "\n", Files.readString(Path.of("f.txt")));
+        String otherUnique = b.substring(0, uniqueDigits(b, all));
+        gitletCommand(new String[]{"checkout", otherUnique, "--", "f.txt"}, "");
+        assertEquals("version " + second + "\n", Files.readString(Path.of("f.txt")));
+        gitletCommand(new String[]{"reset", unique.toUpperCase()}, "");
+        assertEquals("version " + first + "\n", Files.readString(Path.of("f.txt")));
+        runGitletCommand(new String[]{"log"});
+        Matcher m = head.matcher(getOutput());
+        assertTrue(m.find());
+        assertEquals(a, m.group(1));
+    }
+
+    @Test
+    public void test62_batch() throws IOException {
+        writeFile(WUG, "f.txt");
+        writeFile(NOTWUG, "two words.txt");
+        String commands = """
+                init
+                # comments and blank lines are skipped
+
+                add f.txt
+                commit "Add f.txt, \\"quoted\\""
+                checkpoint
+                add "two words.txt"
+                commit ""
+                commit Add\\ two\\ words
+                find "Add f.txt, \\"quoted\\""
+                find "Add two words"
+                rm f.txt
+                status
+                """;
+        InputStream in = System.in;
+        System.setIn(new ByteArrayInputStream(commands.getBytes()));
+        Matcher m;
+        try {
+            m = gitletCommandP(new String[]{"--batch", "-"}, """
+                    Please enter a commit message.
+                    ([a-f0-9]{40})
+                    ([a-f0-9]{40})
+                    === Branches ===
+                    \\*main
+
+                    === Staged Files ===
+
+                    === Removed Files ===
+                    f.txt
+
+                    === Modifications Not Staged For Commit ===
+
+                    === Untracked Files ===
+
+                    """);
+        } finally {
+            System.setIn(in);
+        }
+        assertNotEquals(m.group(1), m.group(2));
+        gitletCommandP(new String[]{"log"}, """
+                ===
+                ${COMMIT_HEAD}
+                Add two words
+
+                ===
+                ${COMMIT_HEAD}
+                Add f.txt, "quoted"
+
+                ===
+                ${COMMIT_HEAD}
+                initial commit
+
+                """.replace("${COMMIT_HEAD}", COMMIT_HEAD));
+        assertTrue(Files.exists(Path.of("two words.txt")));
+    }
+
+    @Test
+    public void test63_racyIndex() throws IOException {
+        i_setup2();
+        Index index = new Index();
+        File file = new File("a.txt");
+        Files.writeString(file.toPath(), "one\n");
+        //just written: inside the racy window, so not trusted
+        index.recordWritten("a.txt", file, "id1");
+        assertNull(index.cachedID("a.txt", file));
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 10000);
+        Files.setLastModifiedTime(file.toPath(), old);
+        index.recordWritten("a.txt", file, "id1");
+        assertEquals("id1", index.cachedID("a.txt", file));
+        Files.writeString(file.toPath(), "three\n");
+        Files.setLastModifiedTime(file.toPath(), old);
+        assertNull(index.cachedID("a.txt", file));
+        Files.writeString(file.toPath(), "two\n");
+        assertNull(index.cachedID("a.txt", file));
+        assertNull(index.cachedID("b.txt", file));
+
+        //a staged file edited within the window at the same size and time
+        Files.writeString(Path.of("h.txt"), "staged\n");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        FileTime mtime = Files.getLastModifiedTime(Path.of("h.txt"));
+        Files.writeString(Path.of("h.txt"), "edited\n");
+        Files.setLastModifiedTime(Path.of("h.txt"), mtime);
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                h.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+                h.txt (modified)
+
+                === Untracked Files ===
+                a.txt
+
+                """);
+    }
+
+    @Test
+    public void test64_checkoutKeepsUnchangedFiles() throws IOException {
+        i_setup2();
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 10000);
+        Files.setLastModifiedTime(Path.of("f.txt"), old);
+        Files.setLastModifiedTime(Path.of("g.txt"), old);
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        assertEquals(old, Files.getLastModifiedTime(Path.of("f.txt")));
+        assertEquals(old, Files.getLastModifiedTime(Path.of("g.txt")));
+        writeFile(WUG2, "g.txt");
+        writeFile(WUG3, "h.txt");
+        gitletCommand(new String[]{"add", "g.txt"}, "");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change g.txt, add h.txt"}, "");
+        Files.setLastModifiedTime(Path.of("g.txt"), old);
+
+        gitletCommand(new String[]{"checkout", "main"}, "");
+        assertEquals(old, Files.getLastModifiedTime(Path.of("f.txt")));
+        assertFileEquals(WUG, "f.txt");
+        assertNotEquals(old, Files.getLastModifiedTime(Path.of("g.txt")));
+        assertFileEquals(NOTWUG, "g.txt");
+        assertFalse(Files.exists(Path.of("h.txt")));
+
+        //a tracked file the same in both commits but edited in the working
+        //copy is rewritten as well
+        writeFile(WUG3, "f.txt");
+        gitletCommand(new String[]{"checkout", "other"}, "");
+        assertFileEquals(WUG, "f.txt");
+        assertFileEquals(WUG2, "g.txt");
+        assertFileEquals(WUG3, "h.txt");
+    }
+
+    @Test
+    public void test65_deltaRoundTrip() {
+        Random random = new Random(65);
+        for (int round = 0; round < 500; round += 1) {
+            byte[] base = new byte[random.nextInt(2000)];
+            for (int k = 0; k < base.length; k += 1) {
+                base[k] = (byte) ('a' + random.nextInt(4));
+            }
+            //cut, insert and move pieces of the base, with inserts longer
+            //than one insert instruction holds
+            ByteArrayOutputStream target = new ByteArrayOutputStream();
+            int edits = random.nextInt(6);
+            for (int e = 0; e <= edits; e += 1) {
+                int from = base.length == 0 ? 0 : random.nextInt(base.length);
+                int to = Math.min(base.length, from + random.nextInt(500));
+                target.write(base, from, to - from);
+                byte[] insert = new byte[random.nextInt(300)];
+                random.nextBytes(insert);
+                target.write(insert, 0, insert.length);
+            }
+            byte[] expected = target.toByteArray();
+            assertArrayEquals("round " + round, expected,
+                    Delta.apply(base, Delta.create(base, expected)));
+            assertArrayEquals(base, Delta.apply(expected, Delta.create(expected, base)));
+        }
+        byte[] empty = new byte[0];
+        assertArrayEquals(empty, Delta.apply(empty, Delta.create(empty, empty)));
+
+        //a few bytes changed in the middle of a large file make a small delta
+        byte[] base = new byte[100_000];
+        random.nextBytes(base);
+        byte[] changed = base.clone();
+        for (int k = 50_000; k < 50_010; k += 1) {
+            changed[k] += 1;
+        }
+        byte[] delta = Delta.create(base, changed);
+        assertTrue(delta.length < 200);
+        assertArrayEquals(changed, Delta.apply(base, delta));
+    }
+
+    @Test
+    public void test66_repackDeltaChains() throws IOException {
+        i_setup2();
+        int versions = 12;
+        List<String> contents = new ArrayList<>();
+        List<String> commitIDs = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i += 1) {
+            text.append("line ").append(i).append(" of a file edited in every version\n");
+        }
+        for (int v = 0; v < versions; v += 1) {
+            text.insert(text.indexOf("line " + (v * 15) + " "), "version " + v + "\n");
+            contents.add(text.toString());
+            Files.writeString(Path.of("f.txt"), text);
+            gitletCommand(new String[]{"add", "f.txt"}, "");
+            gitletCommand(new String[]{"commit", "Version " + v}, "");
+            commitIDs.add(gitletCommandP(new String[]{"find", "Version " + v},
+                    "([a-f0-9]{40})").group(1));
+        }
+        System.setProperty("gitlet.deltaDepth", "3");
+        try {
+            gitletCommand(new String[]{"repack"}, "");
+        } finally {
+            System.clearProperty("gitlet.deltaDepth");
+        }
+
+        //deltas of deltas, but no chain longer than the limit
+        Map<ObjectId, ObjectId> bases = new HashMap<>();
+        for (File idxFile : new File(".gitlet/packs").listFiles(
+                (dir, name) -> name.endsWith(".idx"))) {
+            Pack pack = new Pack(idxFile);
+            for (int pos = 0; pos < pack.size(); pos += 1) {
+                if (pack.type(pos) == Pack.DELTA) {
+                    bases.put(pack.id(pos), pack.baseID(pos));
+                }
+            }
+        }
+        int deepest = 0;
+        for (ObjectId id : bases.keySet()) {
+            int depth = 0;
+            for (ObjectId at = id; bases.containsKey(at); at = bases.get(at)) {
+                depth += 1;
+            }
+            deepest = Math.max(deepest, depth);
+        }
+        assertEquals(3, deepest);
+        assertTrue(bases.size() >= versions / 2);
+
+        for (int v = 0; v < versions; v += 1) {
+            gitletCommand(new String[]{"checkout", commitIDs.get(v), "--", "f.txt"}, "");
+            assertEquals(contents.get(v), Files.readString(Path.of("f.txt")));
+        }
+    }
+
+    /** Returns the number of loose blobs, whole files and chunks alike. */
+    private static long looseBlobs() throws IOException {
+        try (Stream<Path> files = Files.walk(Path.of(".gitlet", "objects"))) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    public void test67_chunkReuse() throws IOException {
+        byte[] original = new byte[16 << 20];
+        new Random(67).nextBytes(original);
+        byte[] content = original.clone();
+        System.setProperty("gitlet.chunkThreshold", String.valueOf(1 << 20));
+        try {
+            i_setup2();
+            Files.write(Path.of("big.bin"), original);
+            gitletCommand(new String[]{"add", "big.bin"}, "");
+            gitletCommand(new String[]{"commit", "Add big.bin"}, "");
+            long before = looseBlobs();
+            assertTrue(before > 8);
+
+            //a few bytes in the middle touch one chunk, or two at a boundary
+            for (int k = content.length / 2; k < content.length / 2 + 10; k += 1) {
+                content[k] += 1;
+            }
+            Files.write(Path.of("big.bin"), content);
+            gitletCommand(new String[]{"add", "big.bin"}, "");
+            gitletCommand(new String[]{"commit", "Edit big.bin"}, "");
+            long added = looseBlobs() - before;
+            assertTrue("new chunks: " + added, added >= 1 && added <= 2);
+        } finally {
+            System.clearProperty("gitlet.chunkThreshold");
+        }
+        String first = gitletCommandP(new String[]{"find", "Add big.bin"},
+                "([a-f0-9]{40})").group(1);
+        gitletCommand(new String[]{"checkout", first, "--", "big.bin"}, "");
+        assertArrayEquals(original, Files.readAllBytes(Path.of("big.bin")));
+        gitletCommand(new String[]{"checkout", "--", "big.bin"}, "");
+        assertArrayEquals(content, Files.readAllBytes(Path.of("big.bin")));
+    }
+
+    @Test
+    public void test68_commitIDIsDeterministic() throws Exception {
+        Hasher hasher = new Hasher();
+        List<String> names = new ArrayList<>();
+        HashMap<String, String> blobs = new HashMap<>();
+        for (int i = 0; i < 200; i += 1) {
+            names.add("file" + i + ".txt");
+            blobs.put(names.get(i), hasher.hash(("contents " + i).getBytes()));
+        }
+        HashMap<String, String> none = new HashMap<>();
+        Commit root = new Commit("initial commit", SYNTHETIC_TIME, null, none, none);
+
+        //the same files added in opposite orders, to maps of different
+        //capacities, so that the maps iterate in different orders
+        HashMap<String, String> forward = new HashMap<>();
+        for (String name : names) {
+            forward.put(name, blobs.get(name));
+        }
+        HashMap<String, String> backward = new HashMap<>(1024);
+        for (int i = names.size() - 1; i >= 0; i -= 1) {
+            backward.put(names.get(i), blobs.get(names.get(i)));
+        }
+        Commit a = new Commit("files", SYNTHETIC_TIME, root, forward, none);
+        Commit b = new Commit("files", SYNTHETIC_TIME, root, backward, none);
+        assertEquals(a.getID(), b.getID());
+
+        HashMap<String, String> removed = new HashMap<>();
+        removed.put("file7.txt", blobs.get("file7.txt"));
+        assertNotEquals(a.getID(),
+                new Commit("files", SYNTHETIC_TIME, root, forward, removed).getID());
+        assertNotEquals(a.getID(),
+                new Commit("Files", SYNTHETIC_TIME, root, forward, none).getID());
+
+        //the id is the SHA-1 of the encoding described in Commit
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        byte[] raw = new byte[20];
+        md.update("parent ".getBytes());
+        md.update(root.getID().copyTo(raw, 0));
+        md.update(("\ntime " + SYNTHETIC_TIME + "\nfiles 200\n").getBytes());
+        List<String> sorted = new ArrayList<>(names);
+        sorted.sort(null);
+        for (String name : sorted) {
+            md.update(name.getBytes());
+            md.update((byte) 0);
+            md.update(ObjectId.fromHex(blobs.get(name)).copyTo(raw, 0));
+        }
+        md.update("\nfiles".getBytes());
+        assertEquals(ObjectId.fromBytes(md.digest()), a.getID());
+    }
 }
@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** A reusable SHA-1 hasher. It keeps one MessageDigest, a direct buffer for
+ *  reading files through their channel and a char[] for the hex numeral,
+ *  so hashing allocates nothing but the resulting String.
+ *
+ *  A Hasher is not thread-safe. Gitlet keeps no static state, so instead
+ *  of a thread-local each thread that hashes owns a Hasher of its own:
+ *  every WorkingTreeScanner and MergePlan task creates one, and an
+ *  ObjectStore keeps one.
+ *  @author Kyusuk Oh
+ */
+public class Hasher {
+
+    /** Bytes read from a file at a time. */
+    static final int READ_SIZE = 64 << 10;
+
+    private final MessageDigest md;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_SIZE);
+    private final char[] hex = new char[2 * ObjectId.LENGTH];
+
+    public Hasher() {
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Returns the hex SHA-1 hash of DATA. */
+    public String hash(byte[] data) {
+        md.update(data);
+        return digest();
+    }
+
+    /** Returns the hex SHA-1 hash of the remaining bytes of DATA, which
+     *  are consumed. */
+    public String hash(ByteBuffer data) {
+        md.update(data);
+        return digest();
+    }
+
+    /** Returns the hex SHA-1 hash of the contents of FILE. */
+    public String hash(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return hash(channel);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the hex SHA-1 hash of everything left in CHANNEL. */
+    public String hash(FileChannel channel) throws IOException {
+        buffer.clear();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            md.update(buffer);
+            buffer.clear();
+        }
+        return digest();
+    }
+
+    /** Finishes the current hash and returns it in hex. */
+    private String digest() {
+        return new String(Utils.toHex(md.digest(), hex));
+    }
+}
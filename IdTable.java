@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+
+/** The sorted table of ids shared by pack indexes and the commit-graph
+ *  file. Each such file starts with a header of three ints (magic,
+ *  version, count), then a fanout table of 256 ints whose entry b counts
+ *  the ids whose first byte is at most b, then the ids themselves, sorted
+ *  and 20 bytes each. The fanout table narrows a lookup to the ids sharing
+ *  its first byte, which are then binary-searched in place, comparing a
+ *  word at a time; the buffer is big-endian, so unsigned word order is
+ *  byte order.
+ *  @author Kyusuk Oh
+ */
+class IdTable {
+
+    static final int HEADER_SIZE = 12;
+    static final int FANOUT_SIZE = 256 * 4;
+    /** Offset of the first id. */
+    static final int IDS_START = HEADER_SIZE + FANOUT_SIZE;
+
+    private final ByteBuffer buffer;
+    private final int count;
+
+    /** The COUNT ids laid out in BUFFER as described above. */
+    IdTable(ByteBuffer buffer, int count) {
+        this.buffer = buffer;
+        this.count = count;
+    }
+
+    /** Returns the position of ID, or -1 if it is not in the table. */
+    int find(ObjectId id) {
+        int first = id.byteAt(0);
+        int lo = fanoutBelow(first);
+        int hi = buffer.getInt(HEADER_SIZE + first * 4);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(mid, id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the position of the first id not less than ID. */
+    int lowerBound(ObjectId id) {
+        int lo = fanoutBelow(id.byteAt(0));
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, id) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the number of ids whose first byte is less than FIRST. */
+    private int fanoutBelow(int first) {
+        return first == 0 ? 0 : buffer.getInt(HEADER_SIZE + (first - 1) * 4);
+    }
+
+    /** Compares the id at position POS with ID. */
+    int compare(int pos, ObjectId id) {
+        int offset = IDS_START + pos * ObjectId.LENGTH;
+        int cmp = Long.compareUnsigned(buffer.getLong(offset), id.getHigh());
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(buffer.getLong(offset + 8), id.getMiddle());
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(buffer.getInt(offset + 16), id.getLow());
+        }
+        return cmp;
+    }
+
+    /** Returns the id at position POS. */
+    ObjectId id(int pos) {
+        return read(buffer, IDS_START + pos * ObjectId.LENGTH);
+    }
+
+    /** Returns the id written at OFFSET in BUFFER. */
+    static ObjectId read(ByteBuffer buffer, int offset) {
+        return new ObjectId(buffer.getLong(offset), buffer.getLong(offset + 8),
+                buffer.getInt(offset + 16));
+    }
+
+    /** Writes the fanout table and the ids of SORTED to OUT, which is
+     *  positioned just after the header. */
+    static void write(ByteBuffer out, ObjectId[] sorted) {
+        int[] fanout = new int[256];
+        for (ObjectId id : sorted) {
+            fanout[id.byteAt(0)] += 1;
+        }
+        int total = 0;
+        for (int b = 0; b < 256; b += 1) {
+            total += fanout[b];
+            out.putInt(total);
+        }
+        byte[] bytes = new byte[ObjectId.LENGTH];
+        for (ObjectId id : sorted) {
+            out.put(id.copyTo(bytes, 0));
+        }
+    }
+}
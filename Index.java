@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+
+/** A stat cache for the working directory, kept in .gitlet/index. For each
+ *  path whose contents gitlet has hashed or written, it records the size,
+ *  modification time and inode the file had at the time, together with the
+ *  blob id of its contents. When a later stat of the file still matches,
+ *  the blob id can be reused without reading the file again.
+ *  @author Kyusuk Oh
+ */
+public class Index implements Serializable {
+
+    /** Entries whose modification time falls within this many milliseconds
+     *  of the moment they were recorded are not trusted: the file might be
+     *  rewritten again within the file system's timestamp granularity
+     *  without its stat changing. */
+    static final long RACY_WINDOW_MS = 1000;
+
+    /** The stat information recorded for one path. */
+    static class Entry implements Serializable {
+        private final long size;
+        private final long mtime;
+        private final String inode;
+        private final long recordedAt;
+        private String blobID;
+
+        Entry(long size, long mtime, String inode, long recordedAt) {
+            this.size = size;
+            this.mtime = mtime;
+            this.inode = inode;
+            this.recordedAt = recordedAt;
+        }
+
+        /** Returns true if OTHER describes the same unchanged file. */
+        boolean sameStat(Entry other) {
+            return size == other.size && mtime == other.mtime
+                    && inode.equals(other.inode);
+        }
+
+        String getBlobID() {
+            return blobID;
+        }
+    }
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    private transient boolean dirty;
+
+    /** Returns the current stat of FILE, or null if it is not a plain
+     *  file. */
+    static Entry stat(File file) {
+        try {
+            BasicFileAttributes attrs =
+                    Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            Object key = attrs.fileKey();
+            return new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(),
+                    key == null ? "" : key.toString(), System.currentTimeMillis());
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Returns the blob id last recorded for NAME if STAT shows the file
+     *  unchanged since then, and null otherwise. */
+    public String cachedID(String name, Entry stat) {
+        Entry entry = entries.get(name);
+        if (entry == null || stat == null || !entry.sameStat(stat)
+                || entry.mtime + RACY_WINDOW_MS >= entry.recordedAt) {
+            return null;
+        }
+        return entry.blobID;
+    }
+
+    /** Returns the blob id last recorded for NAME if the file is unchanged
+     *  since then, and null otherwise. */
+    public String cachedID(String name, File file) {
+        return cachedID(name, stat(file));
+    }
+
+    /** Records that NAME had the contents BLOBID when it had the stat
+     *  STAT. STAT must have been taken before the contents were read or
+     *  written out, so that any later change shows up as a new stat. */
+    public void record(String name, Entry stat, String blobID) {
+        if (stat == null) {
+            return;
+        }
+        stat.blobID = blobID;
+        entries.put(name, stat);
+        dirty = true;
+    }
+
+    /** Records that NAME was just written with the contents BLOBID. */
+    public void recordWritten(String name, File file, String blobID) {
+        record(name, stat(file), blobID);
+    }
+
+    /** Drops what is known about NAME. */
+    public void forget(String name) {
+        if (entries.remove(name) != null) {
+            dirty = true;
+        }
+    }
+
+    /** Returns true if there are changes not yet written to disk. */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /** Marks the index as written. */
+    public void clean() {
+        dirty = false;
+    }
+}
@@ -0,0 +1,219 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/** A three-way merge of lines, in the manner of diff3. The edits turning
+ *  the split point into each side are found with Diff and walked together
+ *  over the lines of the split point. An edit made on one side only is
+ *  taken as it is. Edits from both sides that overlap or touch are grouped
+ *  into one region, which is taken once if both sides made the same change
+ *  and is otherwise written between conflict markers. Everything outside
+ *  the changed regions is copied from the split point, so only the lines
+ *  that really conflict end up between markers.
+ *
+ *  Each side of a conflict ends with a newline, so that the markers are
+ *  always lines of their own. Binary files, and files bigger than
+ *  -Dgitlet.lineMergeLimit, are not cut into lines: they conflict as a
+ *  whole, and both sides are streamed from the store without ever being
+ *  held in memory.
+ *  @author Kyusuk Oh
+ */
+public class LineMerge {
+
+    /** Markers around the two sides of a conflicting region. */
+    static final String CONFLICT_START = "<<<<<<< HEAD\n";
+    static final String CONFLICT_MIDDLE = "=======\n";
+    static final String CONFLICT_END = ">>>>>>>\n";
+    /** Default size in bytes above which a file is not merged by line.
+     *  Override with -Dgitlet.lineMergeLimit=N. */
+    static final long DEFAULT_LIMIT = 2L << 20;
+
+    /** Writes to OUT the merge of blobs HEADID and OTHERID in STORE, which
+     *  both descend from blob BASEID, and returns the number of conflicting
+     *  regions. A null id stands for a file that is absent. */
+    public static int merge(OutputStream out, ObjectStore store,
+                            String baseID, String headID, String otherID)
+            throws IOException {
+        long limit = Long.getLong("gitlet.lineMergeLimit", DEFAULT_LIMIT);
+        String[] ids = {baseID, headID, otherID};
+        byte[][] contents = new byte[ids.length][];
+        for (int k = 0; k < ids.length; k += 1) {
+            contents[k] = readText(store, ids[k], limit);
+            if (ids[k] != null && contents[k] == null) {
+                //binary or too big: stream both sides whole
+                writeWholeConflict(out, store, headID, otherID);
+                return 1;
+            }
+        }
+        return merge(out, contents[0], contents[1], contents[2]);
+    }
+
+    /** Writes to OUT blobs HEADID and OTHERID in STORE, streamed whole,
+     *  between conflict markers. A null id stands for a file that is
+     *  absent. */
+    static void writeWholeConflict(OutputStream out, ObjectStore store,
+                                   String headID, String otherID) throws IOException {
+        out.write(CONFLICT_START.getBytes(StandardCharsets.UTF_8));
+        copySide(out, store, headID);
+        out.write(CONFLICT_MIDDLE.getBytes(StandardCharsets.UTF_8));
+        copySide(out, store, otherID);
+        out.write(CONFLICT_END.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the contents of blob ID in STORE if it is text of at most
+     *  LIMIT bytes, and otherwise null. Reads no more than LIMIT + 1 bytes. */
+    private static byte[] readText(ObjectStore store, String id, long limit)
+            throws IOException {
+        if (id == null) {
+            return null;
+        }
+        byte[] content;
+        try (InputStream in = store.open(id)) {
+            content = in.readNBytes((int) Math.min(limit + 1, Integer.MAX_VALUE - 8));
+        }
+        if (content.length > limit || Diff.isBinary(content)) {
+            return null;
+        }
+        return content;
+    }
+
+    /** Streams blob ID in STORE, if it is not null, to OUT, ending it with
+     *  a newline. */
+    private static void copySide(OutputStream out, ObjectStore store, String id)
+            throws IOException {
+        if (id == null) {
+            return;
+        }
+        byte[] buffer = new byte[ObjectStore.BUFFER_SIZE];
+        int last = '\n';
+        try (InputStream in = store.open(id)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+                last = buffer[n - 1];
+            }
+        }
+        if (last != '\n') {
+            out.write('\n');
+        }
+    }
+
+    /** Writes to OUT the merge of OURS and THEIRS, which both descend from
+     *  BASE, and returns the number of conflicting regions. A null stands
+     *  for a file that is absent. */
+    public static int merge(OutputStream out, byte[] base, byte[] ours, byte[] theirs)
+            throws IOException {
+        Diff.Text original = new Diff.Text(base == null ? new byte[0] : base);
+        Diff.Text mine = new Diff.Text(ours == null ? new byte[0] : ours);
+        Diff.Text yours = new Diff.Text(theirs == null ? new byte[0] : theirs);
+        if (original.isBinary() || mine.isBinary() || yours.isBinary()) {
+            writeConflict(out, mine, 0, mine.size(), yours, 0, yours.size());
+            return 1;
+        }
+        List<Diff.Edit> ourEdits = Diff.diff(original, mine);
+        List<Diff.Edit> theirEdits = Diff.diff(original, yours);
+
+        int conflicts = 0;
+        int i = 0;
+        int j = 0;
+        //lines of each side minus lines of the split point before the region
+        int ourShift = 0;
+        int theirShift = 0;
+        int copied = 0;
+        while (i < ourEdits.size() || j < theirEdits.size()) {
+            boolean oursFirst = j == theirEdits.size() || (i < ourEdits.size()
+                    && ourEdits.get(i).getAStart() <= theirEdits.get(j).getAStart());
+            Diff.Edit first = oursFirst ? ourEdits.get(i) : theirEdits.get(j);
+            int lo = first.getAStart();
+            int hi = first.getAEnd();
+            int iEnd = oursFirst ? i + 1 : i;
+            int jEnd = oursFirst ? j : j + 1;
+            //grow the region while an edit of either side overlaps or touches it
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                if (iEnd < ourEdits.size() && ourEdits.get(iEnd).getAStart() <= hi) {
+                    hi = Math.max(hi, ourEdits.get(iEnd).getAEnd());
+                    iEnd += 1;
+                    grew = true;
+                }
+                if (jEnd < theirEdits.size() && theirEdits.get(jEnd).getAStart() <= hi) {
+                    hi = Math.max(hi, theirEdits.get(jEnd).getAEnd());
+                    jEnd += 1;
+                    grew = true;
+                }
+            }
+
+            writeLines(out, original, copied, lo);
+            int ourLo = lo + ourShift;
+            int ourHi = hi + ourShift;
+            if (iEnd > i) {
+                Diff.Edit last = ourEdits.get(iEnd - 1);
+                ourLo = ourEdits.get(i).getBStart() - (ourEdits.get(i).getAStart() - lo);
+                ourHi = last.getBEnd() + (hi - last.getAEnd());
+                ourShift = last.getBEnd() - last.getAEnd();
+            }
+            int theirLo = lo + theirShift;
+            int theirHi = hi + theirShift;
+            if (jEnd > j) {
+                Diff.Edit last = theirEdits.get(jEnd - 1);
+                theirLo = theirEdits.get(j).getBStart() - (theirEdits.get(j).getAStart() - lo);
+                theirHi = last.getBEnd() + (hi - last.getAEnd());
+                theirShift = last.getBEnd() - last.getAEnd();
+            }
+            if (jEnd == j || iEnd > i && same(mine, ourLo, ourHi, yours, theirLo, theirHi)) {
+                writeLines(out, mine, ourLo, ourHi);
+            } else if (iEnd == i) {
+                writeLines(out, yours, theirLo, theirHi);
+            } else {
+                writeConflict(out, mine, ourLo, ourHi, yours, theirLo, theirHi);
+                conflicts += 1;
+            }
+            copied = hi;
+            i = iEnd;
+            j = jEnd;
+        }
+        writeLines(out, original, copied, original.size());
+        return conflicts;
+    }
+
+    /** Returns true if lines A[aFrom..aTo) are the lines B[bFrom..bTo). */
+    private static boolean same(Diff.Text a, int aFrom, int aTo,
+                                Diff.Text b, int bFrom, int bTo) {
+        return Arrays.equals(a.getData(), a.start(aFrom), a.start(aTo),
+                b.getData(), b.start(bFrom), b.start(bTo));
+    }
+
+    /** Writes lines OURS[ourLo..ourHi) and THEIRS[theirLo..theirHi) to OUT
+     *  between conflict markers. */
+    private static void writeConflict(OutputStream out,
+                                      Diff.Text ours, int ourLo, int ourHi,
+                                      Diff.Text theirs, int theirLo, int theirHi)
+            throws IOException {
+        out.write(CONFLICT_START.getBytes(StandardCharsets.UTF_8));
+        writeSide(out, ours, ourLo, ourHi);
+        out.write(CONFLICT_MIDDLE.getBytes(StandardCharsets.UTF_8));
+        writeSide(out, theirs, theirLo, theirHi);
+        out.write(CONFLICT_END.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Writes lines TEXT[from..to) to OUT, ending them with a newline. */
+    private static void writeSide(OutputStream out, Diff.Text text, int from, int to)
+            throws IOException {
+        writeLines(out, text, from, to);
+        if (to > from && !text.hasNewline(to - 1)) {
+            out.write('\n');
+        }
+    }
+
+    /** Writes lines TEXT[from..to) to OUT as they are. */
+    private static void writeLines(OutputStream out, Diff.Text text, int from, int to)
+            throws IOException {
+        out.write(text.getData(), text.start(from), text.start(to) - text.start(from));
+    }
+}
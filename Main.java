@@ -1,6 +1,13 @@
 package gitlet;
 
+import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author Kyusuk Oh
@@ -10,6 +17,27 @@ public class Main {
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) throws IOException {
+        if (args.length == 2 && args[0].equals("--batch")) {
+            runBatch(args[1]);
+            return;
+        }
+        if (args.length == 1 && args[0].equals("daemon")) {
+            Daemon.start();
+            return;
+        }
+        //hand the command to a running daemon if there is one
+        int status = Daemon.forward(args);
+        if (status > 0) {
+            System.exit(status);
+        } else if (status == 0) {
+            return;
+        }
+        dispatch(null, args);
+    }
+
+    /** Runs the command in ARGS. REPOSITORY is an already loaded repository
+     *  to run it against, or null to read it from disk. */
+    static void dispatch(Repository repository, String[] args) throws IOException {
         //When empty args
         if (args.length == 0) {
             System.out.println("Please enter a command.");
@@ -17,43 +45,45 @@ public class Main {
         }
         String firstArg = args[0];
         if (firstArg.equals("init")) {
-            Repository repository = new Repository(); //create a new repo
+            if (repository == null) {
+                repository = new Repository(); //create a new repo
+            }
             repository.init(); //initiate repo
-            Utils.writeContents(Repository.REPO, Utils.serialize(repository));
+            repository.save();
             return;
         } else if (!Repository.REPO.exists()) {
             System.out.println("Not in an initialized Gitlet directory.");
             return;
         } else {
-            Repository repository = Utils.readObject(Repository.REPO, Repository.class);
+            if (repository == null) {
+                repository = Utils.readObject(Repository.REPO, Repository.class);
+            }
             if (firstArg.equals("add")) {
                 repository.add(args[1]);
-                Utils.writeContents(Repository.REPO, Utils.serialize(repository));
-                return;
+                repository.save();
             } else if (firstArg.equals("rm")) {
                 repository.rm(args[1]);
-                Utils.writeContents(Repository.REPO, Utils.serialize(repository));
-                return;
+                repository.save();
             } else if (firstArg.equals("commit")) {
                 repository.commit(args[1]);
-                Utils.writeContents(Repository.REPO, Utils.serialize(repository));
+                repository.save();
             } else if (firstArg.equals("checkout")) {
                 if (args.length == 2) {
                     repository.checkoutBranch(args[1]);
-                    Utils.writeContents(Repository.REPO, Utils.serialize(repository));
+                    repository.save();
                 } else if (args.length == 3) {
                     if (!args[1].equals("--")) {
                         System.out.println("Incorrect operands.");
                     } else {
                         repository.checkoutFile(args[2]);
-                        Utils.writeContents(Repository.REPO, Utils.serialize(repository));
+                        repository.save();
                     }
                 } else if (args.length == 4) {
                     if (!args[2].equals("--")) {
                         System.out.println("Incorrect operands.");
                     } else {
                         repository.checkoutCommit(args[1], args[3]);
-                        Utils.writeContents(Repository.REPO, Utils.serialize(repository));
+                        repository.save();
                     }
                 }
             } else if (firstArg.equals("branch")) {
@@ -61,11 +91,11 @@ public class Main {
                     System.out.println("No branch name");
                 } else {
                     repository.branch(args[1]);
-                    Utils.writeContents(Repository.REPO, Utils.serialize(repository));
+                    repository.save();
                 }
             } else if (firstArg.equals("rm-branch")) {
                 repository.rmBranch(args[1]);
-                Utils.writeContents(Repository.REPO, Utils.serialize(repository));
+                repository.save();
             } else if (firstArg.equals("log")) {
                 repository.log();
             } else if (firstArg.equals("status")) {
@@ -76,13 +106,112 @@ public class Main {
                 repository.find(args[1]);
             } else if (firstArg.equals("merge")) {
                 repository.merge(args[1]);
-                Utils.writeContents(Repository.REPO, Utils.serialize(repository));
+                repository.save();
             } else if (firstArg.equals("reset")) {
                 repository.reset(args[1]);
-                Utils.writeContents(Repository.REPO, Utils.serialize(repository));
+                repository.save();
+            } else if (firstArg.equals("diff")) {
+                repository.diff(Arrays.copyOfRange(args, 1, args.length));
+            } else if (firstArg.equals("rev-list")) {
+                repository.revList(Arrays.copyOfRange(args, 1, args.length));
+            } else if (firstArg.equals("repack")) {
+                repository.repack();
+                repository.save();
             } else {
                 System.out.println("No command with that name exists.");
             }
+            Utils.verbose("%s", repository.commits().stats());
+        }
+    }
+
+    /** Runs the commands in SOURCE, a file name or "-" for standard input,
+     *  one per line, against a single loaded repository. Arguments are
+     *  separated by whitespace; double quotes group words and backslash
+     *  escapes the next character. Blank lines and lines starting with '#'
+     *  are skipped. The staging area and repository file are written once
+     *  at the end, and additionally at every line reading "checkpoint".
+     *  While a daemon is running it holds the loaded repository, so every
+     *  line is forwarded to it instead and checkpoints have nothing to do. */
+    static void runBatch(String source) throws IOException {
+        Reader reader = source.equals("-")
+                ? new InputStreamReader(System.in) : new FileReader(source);
+        if (Daemon.isRunning()) {
+            try (BufferedReader lines = new BufferedReader(reader)) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    line = line.strip();
+                    if (line.isEmpty() || line.startsWith("#")
+                            || line.equals("checkpoint")) {
+                        continue;
+                    }
+                    int status = Daemon.forward(splitCommand(line));
+                    if (status == Daemon.NOT_RUNNING) {
+                        throw Utils.error("The gitlet daemon stopped during the batch.");
+                    } else if (status > 0) {
+                        //a failed command ends the batch, as it does in-process
+                        System.exit(status);
+                    }
+                }
+            }
+            return;
+        }
+        Repository repository;
+        if (Repository.REPO.exists()) {
+            repository = Utils.readObject(Repository.REPO, Repository.class);
+        } else {
+            repository = new Repository();
+        }
+        repository.setDeferWrites(true);
+        try (BufferedReader lines = new BufferedReader(reader)) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                } else if (line.equals("checkpoint")) {
+                    if (Repository.REPO.exists()) {
+                        repository.flush();
+                    }
+                } else {
+                    dispatch(repository, splitCommand(line));
+                }
+            }
+        } finally {
+            if (Repository.REPO.exists()) {
+                repository.flush();
+            }
+        }
+    }
+
+    /** Splits LINE into arguments as described in runBatch. */
+    private static String[] splitCommand(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder arg = new StringBuilder();
+        boolean inArg = false;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                i += 1;
+                arg.append(line.charAt(i));
+                inArg = true;
+            } else if (c == '"') {
+                quoted = !quoted;
+                inArg = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (inArg) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                arg.append(c);
+                inArg = true;
+            }
+        }
+        if (inArg) {
+            args.add(arg.toString());
         }
+        return args.toArray(new String[0]);
     }
 }
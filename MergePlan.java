@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Everything a merge does to the files, worked out in one pass over the
+ *  files at the split point, at the head and on the other branch before
+ *  any of them is touched. Each file is either taken from the other
+ *  branch, deleted, merged line by line because both sides changed it, or
+ *  left alone. A file added on both sides, or deleted on one side and
+ *  changed on the other, conflicts as a whole. Once resolve has stored the merged files as blobs, the plan
+ *  is a complete list of takes and deletes that can be staged in one
+ *  update and written to the working directory in bulk. Each merged file
+ *  is written to a temporary file and stored from there, so results
+ *  bigger than -Dgitlet.chunkThreshold are chunked.
+ *
+ *  The files to merge do not depend on each other, so they are merged on a
+ *  fork-join pool. Results are collected by position and added to the
+ *  plan in name order afterwards, so the outcome does not depend on which
+ *  thread finished first. Each task hashes the results with a Hasher of
+ *  its own, so the workers do not queue on the store's shared one.
+ *  @author Kyusuk Oh
+ */
+public class MergePlan {
+
+    /** Files are merged in tasks of at most this many. */
+    static final int CHUNK = 4;
+
+    /** A file changed on both sides; any of the three blobs may be null. */
+    private static class Merge {
+        private final String baseID;
+        private final String headID;
+        private final String otherID;
+
+        Merge(String baseID, String headID, String otherID) {
+            this.baseID = baseID;
+            this.headID = headID;
+            this.otherID = otherID;
+        }
+    }
+
+    /** Blob each taken or merged file ends up with, by name. */
+    private final TreeMap<String, String> takes = new TreeMap<>();
+    private final TreeSet<String> deletes = new TreeSet<>();
+    private final TreeMap<String, Merge> merges = new TreeMap<>();
+    private int conflicts;
+
+    /** The plan for merging the files OTHER into HEAD, where both descend
+     *  from the files SPLIT. Each maps file names to blob ids. */
+    public MergePlan(Map<String, String> split, Map<String, String> head,
+                     Map<String, String> other) {
+        Set<String> names = new HashSet<>(head.keySet());
+        names.addAll(other.keySet());
+        for (String name : names) {
+            String splitID = split.get(name);
+            String headID = head.get(name);
+            String otherID = other.get(name);
+            if (Objects.equals(headID, otherID) || Objects.equals(otherID, splitID)) {
+                continue;
+            }
+            if (Objects.equals(headID, splitID)) {
+                if (otherID == null) {
+                    deletes.add(name);
+                } else {
+                    takes.put(name, otherID);
+                }
+            } else {
+                merges.put(name, new Merge(splitID, headID, otherID));
+            }
+        }
+    }
+
+    /** Merges every file changed on both sides and stores the results in
+     *  STORE, turning each merge into a take. Uses as many threads as
+     *  -Dgitlet.mergeThreads says, by default one per processor. */
+    public void resolve(ObjectStore store) {
+        resolve(store, Integer.getInteger("gitlet.mergeThreads",
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    public void resolve(ObjectStore store, int parallelism) {
+        String[] names = merges.keySet().toArray(new String[0]);
+        Merge[] todo = merges.values().toArray(new Merge[0]);
+        String[] ids = new String[names.length];
+        boolean[] conflicted = new boolean[names.length];
+        MergeTask task = new MergeTask(store, todo, ids, conflicted, 0, names.length);
+        if (parallelism <= 1 || names.length <= CHUNK) {
+            task.compute();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        for (int i = 0; i < names.length; i += 1) {
+            takes.put(names[i], ids[i]);
+            if (conflicted[i]) {
+                conflicts += 1;
+            }
+        }
+        merges.clear();
+    }
+
+    /** Merges MERGES[LO..HI), storing the results and putting their blob
+     *  ids into IDS[LO..HI) and whether they conflict into CONFLICTED,
+     *  splitting until CHUNK files remain. */
+    private static class MergeTask extends RecursiveAction {
+        private final ObjectStore store;
+        private final Merge[] merges;
+        private final String[] ids;
+        private final boolean[] conflicted;
+        private final int lo;
+        private final int hi;
+
+        MergeTask(ObjectStore store, Merge[] merges, String[] ids,
+                  boolean[] conflicted, int lo, int hi) {
+            this.store = store;
+            this.merges = merges;
+            this.ids = ids;
+            this.conflicted = conflicted;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= CHUNK || getPool() == null) {
+                Hasher hasher = new Hasher();
+                for (int i = lo; i < hi; i += 1) {
+                    merge(i, hasher);
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new MergeTask(store, merges, ids, conflicted, lo, mid),
+                    new MergeTask(store, merges, ids, conflicted, mid, hi));
+        }
+
+        /** Merges MERGES[I] into a temporary file and stores that, hashing
+         *  with this task's HASHER, so that a big result is chunked like
+         *  any other big file. */
+        private void merge(int i, Hasher hasher) {
+            File tmp = null;
+            try {
+                tmp = File.createTempFile("merge", null, Repository.GITLET_DIR);
+                try (OutputStream out = new BufferedOutputStream(
+                        new FileOutputStream(tmp), ObjectStore.BUFFER_SIZE)) {
+                    Merge merge = merges[i];
+                    if (merge.baseID == null || merge.headID == null
+                            || merge.otherID == null) {
+                        //added on both sides, or deleted on one: there are
+                        //no common lines to merge, even if a side is empty
+                        LineMerge.writeWholeConflict(out, store, merge.headID, merge.otherID);
+                        conflicted[i] = true;
+                    } else {
+                        conflicted[i] = LineMerge.merge(out, store, merge.baseID,
+                                merge.headID, merge.otherID) > 0;
+                    }
+                }
+                ids[i] = store.put(tmp, hasher);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            } finally {
+                if (tmp != null) {
+                    tmp.delete();
+                }
+            }
+        }
+    }
+
+    /** Returns the blob each taken or merged file ends up with. */
+    public Map<String, String> getTakes() {
+        return takes;
+    }
+
+    /** Returns the files to delete. */
+    public Set<String> getDeletes() {
+        return deletes;
+    }
+
+    /** Returns the number of files still to be merged. */
+    public int getMerges() {
+        return merges.size();
+    }
+
+    /** Returns the number of merged files left with conflict markers. */
+    public int conflicts() {
+        return conflicts;
+    }
+
+    /** Returns the number of files the merge changes. */
+    public int size() {
+        return takes.size() + deletes.size() + merges.size();
+    }
+}
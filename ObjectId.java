@@ -0,0 +1,159 @@
+package gitlet;
+
+import java.io.Serializable;
+
+/** The 20-byte SHA-1 id of a stored object, held in two longs and an int.
+ *  It takes a fraction of the memory of a 40-character hex String, equals
+ *  compares three words, and the hash code is simply the first four bytes,
+ *  which are already uniformly distributed. Ids order like their hex
+ *  numerals. Hex is only produced for printing and for file names.
+ *  @author Kyusuk Oh
+ */
+public final class ObjectId implements Comparable<ObjectId>, Serializable {
+
+    /** Length of an id in bytes and as a hex numeral. */
+    static final int LENGTH = 20;
+    static final int HEX_LENGTH = 2 * LENGTH;
+
+    private final long high;
+    private final long middle;
+    private final int low;
+
+    public ObjectId(long high, long middle, int low) {
+        this.high = high;
+        this.middle = middle;
+        this.low = low;
+    }
+
+    /** Returns the id whose bytes are BYTES[OFFSET..OFFSET+LENGTH). */
+    public static ObjectId fromBytes(byte[] bytes, int offset) {
+        return new ObjectId(readLong(bytes, offset), readLong(bytes, offset + 8),
+                (int) (readLong(bytes, offset + 12) & 0xffffffffL));
+    }
+
+    /** Returns the id whose bytes are BYTES. */
+    public static ObjectId fromBytes(byte[] bytes) {
+        return fromBytes(bytes, 0);
+    }
+
+    /** Returns the id written as the hex numeral HEX. */
+    public static ObjectId fromHex(String hex) {
+        if (!isHex(hex)) {
+            throw new IllegalArgumentException("Not an object id: " + hex);
+        }
+        return fromBytes(Utils.fromHex(hex, new byte[LENGTH]));
+    }
+
+    /** Returns true if TEXT is a full id written in lower-case hex. */
+    public static boolean isHex(String text) {
+        if (text == null || text.length() != HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HEX_LENGTH; i += 1) {
+            if (Utils.HEX_DIGITS.indexOf(text.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if TEXT could begin a hex id: one to HEX_LENGTH
+     *  lower-case hex digits. */
+    public static boolean isPrefix(String text) {
+        if (text.isEmpty() || text.length() > HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i += 1) {
+            if (Utils.HEX_DIGITS.indexOf(text.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the smallest (FILL '0') or largest (FILL 'f') id starting
+     *  with the hex digits PREFIX. */
+    public static ObjectId bound(String prefix, char fill) {
+        StringBuilder hex = new StringBuilder(HEX_LENGTH).append(prefix);
+        while (hex.length() < HEX_LENGTH) {
+            hex.append(fill);
+        }
+        return fromHex(hex.toString());
+    }
+
+    /** Returns byte I of this id, from 0 to LENGTH - 1. */
+    public int byteAt(int i) {
+        long word = i < 8 ? high : i < 16 ? middle : low;
+        int shift = i < 16 ? 56 - 8 * (i % 8) : 24 - 8 * (i - 16);
+        return (int) (word >>> shift) & 0xff;
+    }
+
+    /** Writes the bytes of this id into BYTES at OFFSET and returns BYTES. */
+    public byte[] copyTo(byte[] bytes, int offset) {
+        for (int i = 0; i < LENGTH; i += 1) {
+            bytes[offset + i] = (byte) byteAt(i);
+        }
+        return bytes;
+    }
+
+    /** Returns the hex numeral of this id. */
+    public String toHex() {
+        return Utils.toHex(copyTo(new byte[LENGTH], 0));
+    }
+
+    /** Returns the first N hex digits of this id. */
+    public String abbreviate(int n) {
+        return toHex().substring(0, n);
+    }
+
+    long getHigh() {
+        return high;
+    }
+
+    long getMiddle() {
+        return middle;
+    }
+
+    int getLow() {
+        return low;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int cmp = Long.compareUnsigned(high, other.high);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(middle, other.middle);
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(low, other.low);
+        }
+        return cmp;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return high == other.high && middle == other.middle && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (high >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i += 1) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,642 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** Content-addressed store for file contents and commits. Each distinct
+ *  file body is written exactly once, named by the SHA-1 hash of its
+ *  uncompressed contents, and every object is kept as a zlib stream.
+ *
+ *  New objects are written loose: blobs under .gitlet/objects, where, like
+ *  git, the first two hex digits of the id select a subdirectory, and
+ *  commits under .gitlet/commits. The repack command moves every reachable
+ *  object into a single pack under .gitlet/packs (see Pack), which is
+ *  memory-mapped once per process and searched in place. In a pack, each
+ *  version of a file is normally kept as a Delta against the next newer
+ *  version of the same file, in chains at most -Dgitlet.deltaDepth long.
+ *  Reconstructed bases are kept in a small cache, since checking out
+ *  neighbouring versions resolves the same chain over and over.
+ *
+ *  A file bigger than -Dgitlet.chunkThreshold is cut into content-defined
+ *  chunks (see Chunker), each stored as a blob of its own, and its id
+ *  names a chunk list under .gitlet/chunks instead of a loose object. A
+ *  small edit to such a file then stores only the chunks around it.
+ *  @author Kyusuk Oh
+ */
+public class ObjectStore {
+
+    /** Size of the buffers used when streaming objects in and out. */
+    static final int BUFFER_SIZE = 8192;
+    /** Default length of the longest delta chain repack writes. Override
+     *  with -Dgitlet.deltaDepth=N; 0 turns deltas off. */
+    static final int DEFAULT_DELTA_DEPTH = 10;
+    /** Default bytes of reconstructed bases kept in memory. Override with
+     *  -Dgitlet.deltaCache=N. */
+    static final long DEFAULT_BASE_CACHE = 32L << 20;
+    /** Default size in bytes above which a stored blob is too big to be
+     *  packed or delta-compressed and stays loose, so that it is only ever
+     *  streamed. Override with -Dgitlet.bigFileThreshold=N. */
+    static final long DEFAULT_BIG_FILE_THRESHOLD = 64L << 20;
+    /** Default size in bytes above which files are stored as chunks.
+     *  Override with -Dgitlet.chunkThreshold=N. */
+    static final long DEFAULT_CHUNK_THRESHOLD = 8L << 20;
+
+    /** Hashes everything stored; shared by the threads using this store. */
+    private final Hasher hasher = new Hasher();
+
+    /** The packs in .gitlet/packs, mapped the first time they are needed. */
+    private List<Pack> packs;
+
+    /** Recently reconstructed delta bases, least recently used first. */
+    private final LinkedHashMap<String, byte[]> bases = new LinkedHashMap<>(16, 0.75f, true);
+    private final long baseCacheLimit = Long.getLong("gitlet.deltaCache", DEFAULT_BASE_CACHE);
+    private long baseCacheSize;
+
+    /* BLOBS */
+
+    /** Saves CONTENT in the store if it is not there already, and returns
+     *  its blob id. */
+    public String put(byte[] content) {
+        return put(content, null);
+    }
+
+    /** Like put(CONTENT), but hashes with HASHER, which belongs to the
+     *  calling thread, rather than the store's shared one. A null HASHER
+     *  means the shared one. */
+    public String put(byte[] content, Hasher hasher) {
+        String id;
+        if (hasher != null) {
+            id = hasher.hash(content);
+        } else {
+            synchronized (this.hasher) {
+                id = this.hasher.hash(content);
+            }
+        }
+        if (!contains(id)) {
+            writeAtomically(blobFile(id), compress(content));
+        }
+        return id;
+    }
+
+    /** Writes CONTENTS to a temporary file beside TARGET and renames it
+     *  into place, so that a reader, or another thread storing the same
+     *  object, never sees TARGET half written. */
+    private static void writeAtomically(File target, Object... contents) {
+        target.getParentFile().mkdirs();
+        try {
+            File tmp = File.createTempFile("tmp", null, target.getParentFile());
+            Utils.writeContents(tmp, contents);
+            if (!tmp.renameTo(target)) {
+                tmp.delete();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Saves the contents of FILE in the store if they are not there
+     *  already, and returns their blob id. The file is streamed twice,
+     *  once to hash it and once to compress it, through fixed buffers, so
+     *  its size does not matter. */
+    public String put(File file) {
+        return put(file, null);
+    }
+
+    /** Like put(FILE), but hashes with HASHER, which belongs to the calling
+     *  thread, rather than the store's shared one, so that threads storing
+     *  files at once do not wait for each other. A null HASHER means the
+     *  shared one. */
+    public String put(File file, Hasher hasher) {
+        String id;
+        if (hasher != null) {
+            id = hasher.hash(file);
+        } else {
+            synchronized (this.hasher) {
+                id = this.hasher.hash(file);
+            }
+        }
+        if (contains(id)) {
+            return id;
+        }
+        if (file.length() > Long.getLong("gitlet.chunkThreshold", DEFAULT_CHUNK_THRESHOLD)) {
+            putChunked(id, file, hasher);
+        } else {
+            File target = blobFile(id);
+            target.getParentFile().mkdirs();
+            Deflater deflater = new Deflater(level());
+            try {
+                File tmp = File.createTempFile("tmp", null, target.getParentFile());
+                try (InputStream in = new FileInputStream(file);
+                     DeflaterOutputStream out = new DeflaterOutputStream(
+                             new FileOutputStream(tmp), deflater, BUFFER_SIZE)) {
+                    in.transferTo(out);
+                }
+                if (!tmp.renameTo(target)) {
+                    tmp.delete();
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            } finally {
+                deflater.end();
+            }
+        }
+        return id;
+    }
+
+    /** Stores FILE, whose blob id is ID, as content-defined chunks hashed
+     *  with HASHER and writes its chunk list. */
+    private void putChunked(String id, File file, Hasher hasher) {
+        StringBuilder list = new StringBuilder();
+        try (InputStream in = new FileInputStream(file)) {
+            new Chunker().split(in, chunk -> {
+                list.append(put(chunk, hasher)).append(' ').append(chunk.length).append('\n');
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        writeAtomically(chunkListFile(id), list.toString());
+    }
+
+    /** Returns true if blob ID is stored as chunks. */
+    public boolean isChunked(String id) {
+        return chunkListFile(id).isFile();
+    }
+
+    /** Returns the chunks of blob ID in order, or null if it is not stored
+     *  as chunks. */
+    public List<Chunker.Chunk> chunks(String id) {
+        File file = chunkListFile(id);
+        if (!file.isFile()) {
+            return null;
+        }
+        List<Chunker.Chunk> chunks = new ArrayList<>();
+        for (String line : Utils.readContentsAsString(file).split("\n")) {
+            if (!line.isEmpty()) {
+                int space = line.indexOf(' ');
+                chunks.add(new Chunker.Chunk(line.substring(0, space),
+                        Long.parseLong(line.substring(space + 1))));
+            }
+        }
+        return chunks;
+    }
+
+    private static File chunkListFile(String id) {
+        return Utils.join(Repository.CHUNKS, id);
+    }
+
+    /** Writes the contents of blob ID to FILE, which now holds blob
+     *  CURRENTID, or something unknown if CURRENTID is null. If both are
+     *  stored as chunks, only the chunks that differ from those at the same
+     *  offset in the current contents are written. */
+    public void copyTo(String id, File file, String currentID) {
+        List<Chunker.Chunk> target = chunks(id);
+        List<Chunker.Chunk> current = currentID == null ? null : chunks(currentID);
+        if (target == null || current == null || !file.isFile()) {
+            copyTo(id, file);
+            return;
+        }
+        HashMap<Long, String> currentAt = new HashMap<>();
+        long offset = 0;
+        for (Chunker.Chunk chunk : current) {
+            currentAt.put(offset, chunk.getID());
+            offset += chunk.getLength();
+        }
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            offset = 0;
+            for (Chunker.Chunk chunk : target) {
+                if (!chunk.getID().equals(currentAt.get(offset))) {
+                    ByteBuffer content = ByteBuffer.wrap(get(chunk.getID()));
+                    long at = offset;
+                    while (content.hasRemaining()) {
+                        at += out.write(content, at);
+                    }
+                }
+                offset += chunk.getLength();
+            }
+            out.truncate(offset);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Writes the contents of the blob with the given ID to FILE, a
+     *  buffer at a time. */
+    public void copyTo(String id, File file) {
+        try (InputStream in = open(id);
+             OutputStream out = new FileOutputStream(file)) {
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the contents of the blob with the given ID. */
+    public byte[] get(String id) {
+        File file = blobFile(id);
+        if (file.isFile()) {
+            return readAll(inflate(file));
+        }
+        if (chunkListFile(id).isFile()) {
+            return readAll(open(id));
+        }
+        Pack pack = findPacked(id);
+        if (pack == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        int pos = pack.find(ObjectId.fromHex(id));
+        if (pack.type(pos) != Pack.DELTA) {
+            return readAll(pack.open(pos));
+        }
+        return Delta.apply(base(pack.baseID(pos).toHex()), readAll(pack.open(pos)));
+    }
+
+    /** Returns a stream that inflates the blob with the given ID as it is
+     *  read. The caller must close it. */
+    public InputStream open(String id) {
+        File file = blobFile(id);
+        if (file.isFile()) {
+            return inflate(file);
+        }
+        List<Chunker.Chunk> chunks = chunks(id);
+        if (chunks != null) {
+            Iterator<Chunker.Chunk> next = chunks.iterator();
+            return new SequenceInputStream(new Enumeration<>() {
+                @Override
+                public boolean hasMoreElements() {
+                    return next.hasNext();
+                }
+
+                @Override
+                public InputStream nextElement() {
+                    return open(next.next().getID());
+                }
+            });
+        }
+        Pack pack = findPacked(id);
+        if (pack != null && pack.type(pack.find(ObjectId.fromHex(id))) == Pack.DELTA) {
+            return new ByteArrayInputStream(get(id));
+        }
+        if (pack == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        return openPacked(ObjectId.fromHex(id), "object");
+    }
+
+    /** Returns the contents of blob ID, which is the base of a delta,
+     *  from the cache if it has been reconstructed recently. */
+    private byte[] base(String id) {
+        synchronized (bases) {
+            byte[] content = bases.get(id);
+            if (content != null) {
+                return content;
+            }
+        }
+        byte[] content = get(id);
+        synchronized (bases) {
+            if (bases.put(id, content) == null) {
+                baseCacheSize += content.length;
+            }
+            Iterator<byte[]> eldest = bases.values().iterator();
+            while (baseCacheSize > baseCacheLimit && eldest.hasNext()) {
+                baseCacheSize -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+        return content;
+    }
+
+    /** Returns everything left in IN and closes it. */
+    private static byte[] readAll(InputStream in) {
+        try (in) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns true if a blob with the given ID is in the store. */
+    public boolean contains(String id) {
+        return blobFile(id).isFile() || chunkListFile(id).isFile() || findPacked(id) != null;
+    }
+
+    /** Returns the file in which the loose blob ID is kept. */
+    private static File blobFile(String id) {
+        return Utils.join(Repository.OBJECTS, id.substring(0, 2), id.substring(2));
+    }
+
+    /* COMMITS */
+
+    /** Saves COMMIT unless it is already stored. Commits are immutable, so
+     *  an existing one is never rewritten. */
+    public void putCommit(Commit commit) {
+        if (!containsCommit(commit.getID())) {
+            File file = commitFile(commit.getID());
+            file.getParentFile().mkdir();
+            writeCompressedObject(file, commit);
+        }
+    }
+
+    /** Returns the commit with the given ID. */
+    public Commit getCommit(ObjectId id) {
+        File file = commitFile(id);
+        InputStream in = file.isFile() ? inflate(file) : openPacked(id, "commit");
+        return readObject(in, Commit.class);
+    }
+
+    /** Returns true if a commit with the given ID has been saved. */
+    public boolean containsCommit(ObjectId id) {
+        return commitFile(id).isFile() || findPacked(id) != null;
+    }
+
+    /** Returns the ids of all stored commits, in order. */
+    public TreeSet<ObjectId> commitIDs() {
+        TreeSet<ObjectId> ids = new TreeSet<>();
+        looseCommitsWithPrefix("", ids, Integer.MAX_VALUE);
+        for (Pack pack : packs()) {
+            for (int pos = 0; pos < pack.size(); pos += 1) {
+                if (pack.type(pos) == Pack.COMMIT) {
+                    ids.add(pack.id(pos));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Returns the ids of the commits that are not packed, in order. */
+    public TreeSet<ObjectId> looseCommitIDs() {
+        TreeSet<ObjectId> ids = new TreeSet<>();
+        looseCommitsWithPrefix("", ids, Integer.MAX_VALUE);
+        return ids;
+    }
+
+    /** Returns up to LIMIT ids of stored commits that start with the hex
+     *  digits PREFIX, in order. Packed commits are found by binary search
+     *  of the pack indexes; loose ones by listing the one fanout directory
+     *  named by the first two digits. */
+    public TreeSet<ObjectId> commitsWithPrefix(String prefix, int limit) {
+        TreeSet<ObjectId> ids = new TreeSet<>();
+        looseCommitsWithPrefix(prefix, ids, limit);
+        for (Pack pack : packs()) {
+            pack.findPrefix(prefix, Pack.COMMIT, ids, limit);
+        }
+        return ids;
+    }
+
+    /** Adds to IDS the loose commits starting with PREFIX until IDS holds
+     *  LIMIT ids. */
+    private static void looseCommitsWithPrefix(String prefix, Set<ObjectId> ids, int limit) {
+        String[] dirs = prefix.length() >= 2
+                ? new String[] {prefix.substring(0, 2)} : Repository.COMMITS.list();
+        if (dirs == null) {
+            return;
+        }
+        Arrays.sort(dirs);
+        for (String dir : dirs) {
+            if (!dir.startsWith(prefix.substring(0, Math.min(2, prefix.length())))) {
+                continue;
+            }
+            List<String> names = Utils.plainFilenamesIn(Utils.join(Repository.COMMITS, dir));
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                String hex = dir + name;
+                if (ids.size() >= limit) {
+                    return;
+                }
+                if (hex.startsWith(prefix) && ObjectId.isHex(hex)) {
+                    ids.add(ObjectId.fromHex(hex));
+                }
+            }
+        }
+    }
+
+    /** Returns the file in which the loose commit ID is kept. Like blobs,
+     *  commits are fanned out over subdirectories named by their first
+     *  two hex digits. */
+    private static File commitFile(ObjectId id) {
+        String hex = id.toHex();
+        return Utils.join(Repository.COMMITS, hex.substring(0, 2), hex.substring(2));
+    }
+
+    /* PACKS */
+
+    /** Returns the packs of this repository. */
+    private synchronized List<Pack> packs() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            File[] idxFiles = Repository.PACKS.listFiles((dir, name) ->
+                    name.startsWith("pack-") && name.endsWith(".idx"));
+            if (idxFiles != null) {
+                for (File idxFile : idxFiles) {
+                    packs.add(new Pack(idxFile));
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Returns the pack holding object ID, or null if it is not packed. */
+    private Pack findPacked(ObjectId id) {
+        for (Pack pack : packs()) {
+            if (pack.find(id) >= 0) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the pack holding the blob with hex id ID, or null. */
+    private Pack findPacked(String id) {
+        if (packs().isEmpty() || !ObjectId.isHex(id)) {
+            return null;
+        }
+        return findPacked(ObjectId.fromHex(id));
+    }
+
+    /** Returns a stream inflating the packed object ID, whose KIND is used
+     *  in the error if there is no such object. */
+    private InputStream openPacked(ObjectId id, String kind) {
+        Pack pack = findPacked(id);
+        if (pack == null) {
+            throw Utils.error("Missing %s %s.", kind, id);
+        }
+        return pack.open(pack.find(id));
+    }
+
+    /** Writes the given commits and blobs, wherever they are now stored,
+     *  into new packs, one unless they outgrow Pack.MAX_SIZE. Then deletes
+     *  the old packs and every loose object that went into the new packs.
+     *  Returns the new packs.
+     *
+     *  Each list in VERSIONS holds the blobs of one file, newest first.
+     *  The first is stored whole and each later one as a delta against
+     *  the one before it, as long as that is smaller and the chain stays
+     *  within the depth limit. A blob listed more than once is stored
+     *  where it first appears. Blobs whose loose copy is bigger than
+     *  -Dgitlet.bigFileThreshold are left loose, and so are chunked files
+     *  and their chunks, which together could outgrow a mapped pack. */
+    public List<Pack> repack(Collection<ObjectId> commitIDs,
+                             Collection<? extends List<String>> versions) {
+        int maxDepth = Integer.getInteger("gitlet.deltaDepth", DEFAULT_DELTA_DEPTH);
+        List<Pack> oldPacks = new ArrayList<>(packs());
+        Pack.Writer writer = new Pack.Writer(Repository.PACKS);
+        for (ObjectId id : commitIDs) {
+            writer.add(id, Pack.COMMIT, rawObject(id, commitFile(id)));
+        }
+        long bigFile = Long.getLong("gitlet.bigFileThreshold", DEFAULT_BIG_FILE_THRESHOLD);
+        HashMap<String, Integer> depths = new HashMap<>();
+        int deltas = 0;
+        for (List<String> file : versions) {
+            String baseID = null;
+            byte[] base = null;
+            for (String id : file) {
+                if (blobFile(id).length() > bigFile || chunkListFile(id).isFile()) {
+                    baseID = null;
+                    continue;
+                }
+                byte[] content = get(id);
+                if (!depths.containsKey(id)) {
+                    byte[] whole = compress(content);
+                    int depth = baseID == null ? maxDepth : depths.get(baseID);
+                    byte[] delta = depth < maxDepth ? compress(Delta.create(base, content)) : null;
+                    if (delta != null && delta.length + ObjectId.LENGTH < whole.length) {
+                        writer.addDelta(ObjectId.fromHex(id), ObjectId.fromHex(baseID),
+                                ByteBuffer.wrap(delta));
+                        depths.put(id, depth + 1);
+                        deltas += 1;
+                    } else {
+                        writer.add(ObjectId.fromHex(id), Pack.BLOB, ByteBuffer.wrap(whole));
+                        depths.put(id, 0);
+                    }
+                }
+                baseID = id;
+                base = content;
+            }
+        }
+        List<Pack> newPacks = writer.finish();
+        Utils.verbose("repack: %d of %d blobs stored as deltas", deltas, depths.size());
+
+        Set<String> names = new HashSet<>();
+        for (Pack pack : newPacks) {
+            names.add(pack.getName());
+        }
+        for (Pack old : oldPacks) {
+            if (!names.contains(old.getName())) {
+                old.delete();
+            }
+        }
+        for (ObjectId id : commitIDs) {
+            commitFile(id).delete();
+        }
+        for (String id : depths.keySet()) {
+            blobFile(id).delete();
+        }
+        synchronized (this) {
+            packs = null;
+        }
+        synchronized (bases) {
+            bases.clear();
+            baseCacheSize = 0;
+        }
+        return newPacks;
+    }
+
+    /** Returns the compressed bytes of object ID, kept loose in LOOSE or
+     *  in one of the packs. */
+    private ByteBuffer rawObject(ObjectId id, File loose) {
+        if (loose.isFile()) {
+            return ByteBuffer.wrap(Utils.readContents(loose));
+        }
+        Pack pack = findPacked(id);
+        if (pack == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        return pack.raw(pack.find(id));
+    }
+
+    /* COMPRESSION */
+
+    /** Returns the compression level set with -Dgitlet.compression, from
+     *  0 (store only) to 9 (smallest); zlib's default if unset. */
+    static int level() {
+        return Integer.getInteger("gitlet.compression", Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /** Returns CONTENT as a zlib stream. */
+    static byte[] compress(byte[] content) {
+        Deflater deflater = new Deflater(level());
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2 + 64);
+            try (DeflaterOutputStream out =
+                         new DeflaterOutputStream(bytes, deflater, BUFFER_SIZE)) {
+                out.write(content);
+            }
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Returns a stream that inflates the zlib stream in FILE. */
+    static InputStream inflate(File file) {
+        try {
+            return new InflaterInputStream(
+                    new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Writes OBJ to FILE, serialized and compressed. */
+    static void writeCompressedObject(File file, Serializable obj) {
+        Utils.writeContents(file, compress(Utils.serialize(obj)));
+    }
+
+    /** Returns an object of type T read from the compressed FILE, casting
+     *  it to EXPECTEDCLASS. */
+    static <T extends Serializable> T readCompressedObject(File file,
+                                                           Class<T> expectedClass) {
+        return readObject(inflate(file), expectedClass);
+    }
+
+    /** Returns an object of type T deserialized from IN, casting it to
+     *  EXPECTEDCLASS, and closes IN. */
+    private static <T extends Serializable> T readObject(InputStream in,
+                                                         Class<T> expectedClass) {
+        try (ObjectInputStream objects = new ObjectInputStream(in)) {
+            return expectedClass.cast(objects.readObject());
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+}
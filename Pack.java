@@ -0,0 +1,352 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A pack: many compressed objects concatenated into one file, together with
+ *  an index that finds them by id. Both files are memory-mapped, and a
+ *  lookup binary-searches the index in place, so nothing is copied onto the
+ *  heap until an object is actually inflated.
+ *
+ *  The .pack file holds a header (magic, version, object count) followed by
+ *  one entry per object: a type byte, the length of the compressed data as
+ *  an int, and the zlib stream itself, exactly as it is kept loose. A delta
+ *  entry also puts the 20-byte id of its base between the length and the
+ *  zlib stream, which then holds a Delta rather than the object itself.
+ *
+ *  The .idx file starts with an IdTable: a header (magic, version, object
+ *  count), a fanout table of 256 ints whose entry b counts the ids whose
+ *  first byte is at most b, and the sorted 20-byte ids. One type byte per
+ *  id follows, and finally the offset of each entry in the .pack file as a
+ *  long.
+ *
+ *  A .pack file is mapped as one buffer, which cannot exceed
+ *  Integer.MAX_VALUE bytes, so the writer starts a new pack before one
+ *  would grow past MAX_SIZE, and checks that each pack opens before giving
+ *  it its final name.
+ *  @author Kyusuk Oh
+ */
+public class Pack {
+
+    /** Type tags of packed objects. */
+    public static final byte BLOB = 1;
+    public static final byte COMMIT = 2;
+    public static final byte DELTA = 3;
+
+    static final int PACK_MAGIC = 0x4750434b;
+    static final int IDX_MAGIC = 0x47494458;
+    static final int VERSION = 1;
+    /** Largest .pack file written. Override with -Dgitlet.maxPackSize=N. */
+    static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    private final File packFile;
+    private final File idxFile;
+    private final MappedByteBuffer idx;
+    private final MappedByteBuffer pack;
+    private final int count;
+    private final IdTable ids;
+    private final int typesStart;
+    private final int offsetsStart;
+
+    /** Opens the pack whose index is IDXFILE. */
+    public Pack(File idxFile) {
+        this.idxFile = idxFile;
+        String name = idxFile.getName();
+        this.packFile = new File(idxFile.getParentFile(),
+                name.substring(0, name.length() - ".idx".length()) + ".pack");
+        this.idx = map(idxFile);
+        this.pack = map(packFile);
+        if (idx.getInt(0) != IDX_MAGIC || idx.getInt(4) != VERSION
+                || pack.getInt(0) != PACK_MAGIC || pack.getInt(4) != VERSION) {
+            throw Utils.error("Corrupt pack %s.", name);
+        }
+        this.count = idx.getInt(8);
+        this.ids = new IdTable(idx, count);
+        this.typesStart = IdTable.IDS_START + count * ObjectId.LENGTH;
+        this.offsetsStart = typesStart + count;
+    }
+
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the number of objects in this pack. */
+    public int size() {
+        return count;
+    }
+
+    /** Returns the position of the object ID in this pack, or -1 if it
+     *  is not here. */
+    public int find(ObjectId id) {
+        return ids.find(id);
+    }
+
+    /** Adds to MATCHES the ids of objects of type TYPE in this pack that
+     *  start with the hex digits PREFIX, in order, until MATCHES holds
+     *  LIMIT ids. The fanout table narrows the search to one first byte
+     *  and a binary search finds the first candidate, so this takes
+     *  O(log n) plus the number of objects sharing the prefix. */
+    public void findPrefix(String prefix, byte type, Collection<ObjectId> matches, int limit) {
+        ObjectId lower = ObjectId.bound(prefix, '0');
+        ObjectId upper = ObjectId.bound(prefix, 'f');
+        for (int pos = ids.lowerBound(lower); pos < count && matches.size() < limit
+                && ids.compare(pos, upper) <= 0; pos += 1) {
+            if (type(pos) == type) {
+                matches.add(id(pos));
+            }
+        }
+    }
+
+    /** Returns the id of the object at position POS. */
+    public ObjectId id(int pos) {
+        return ids.id(pos);
+    }
+
+    /** Returns the type of the object at position POS. */
+    public byte type(int pos) {
+        return idx.get(typesStart + pos);
+    }
+
+    /** Returns the id of the base of the delta at position POS. */
+    public ObjectId baseID(int pos) {
+        return IdTable.read(pack, entry(pos) + 5);
+    }
+
+    /** Returns the compressed bytes of the object, or for a delta of the
+     *  delta, at position POS as a read-only view of the mapped pack. */
+    public ByteBuffer raw(int pos) {
+        int offset = entry(pos);
+        int length = pack.getInt(offset + 1);
+        int start = offset + 5 + (type(pos) == DELTA ? ObjectId.LENGTH : 0);
+        return pack.slice(start, length).asReadOnlyBuffer();
+    }
+
+    /** Returns the offset in the pack of the entry at position POS. */
+    private int entry(int pos) {
+        return (int) idx.getLong(offsetsStart + pos * 8);
+    }
+
+    /** Returns a stream that inflates the object at position POS. */
+    public InputStream open(int pos) {
+        return new InflaterInputStream(new BufferInputStream(raw(pos)),
+                new Inflater(), ObjectStore.BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inf.end();
+            }
+        };
+    }
+
+    /** Returns the name shared by this pack's two files. */
+    public String getName() {
+        return packFile.getName();
+    }
+
+    /** Deletes this pack and its index. */
+    public void delete() {
+        idxFile.delete();
+        packFile.delete();
+    }
+
+    /** An InputStream reading the remaining bytes of a ByteBuffer. */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+
+    /** Builds new packs in a directory from objects added in any order,
+     *  starting another pack whenever the current one would grow past its
+     *  size limit. */
+    public static class Writer {
+        private final File dir;
+        private final long maxSize;
+        private final File tmpPack;
+        private final File tmpIdx;
+        private FileChannel out;
+        private final List<ObjectId> ids = new ArrayList<>();
+        private final List<Byte> types = new ArrayList<>();
+        private final List<Long> offsets = new ArrayList<>();
+        private final List<Pack> finished = new ArrayList<>();
+        private long position;
+
+        /** Starts packs to be placed in DIR. */
+        public Writer(File dir) {
+            this.dir = dir;
+            dir.mkdirs();
+            this.maxSize = Math.min(MAX_SIZE, Long.getLong("gitlet.maxPackSize", MAX_SIZE));
+            this.tmpPack = new File(dir, "tmp.pack");
+            this.tmpIdx = new File(dir, "tmp.idx");
+            start();
+        }
+
+        /** Opens a fresh temporary pack and writes its header. */
+        private void start() {
+            try {
+                out = FileChannel.open(tmpPack.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                ByteBuffer header = ByteBuffer.allocate(IdTable.HEADER_SIZE);
+                header.putInt(PACK_MAGIC).putInt(VERSION).putInt(0).flip();
+                position = writeFully(header);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+
+        /** Appends the object ID of the given TYPE, whose zlib-compressed
+         *  contents are the remaining bytes of COMPRESSED. */
+        public void add(ObjectId id, byte type, ByteBuffer compressed) {
+            add(id, type, null, compressed);
+        }
+
+        /** Appends the object ID as a delta against the object BASEID,
+         *  with the zlib-compressed delta in the remaining bytes of
+         *  COMPRESSED. */
+        public void addDelta(ObjectId id, ObjectId baseID, ByteBuffer compressed) {
+            add(id, DELTA, baseID, compressed);
+        }
+
+        private void add(ObjectId id, byte type, ObjectId baseID, ByteBuffer compressed) {
+            try {
+                ByteBuffer header = ByteBuffer.allocate(5 + (baseID == null ? 0 : ObjectId.LENGTH));
+                header.put(type).putInt(compressed.remaining());
+                if (baseID != null) {
+                    header.put(baseID.copyTo(new byte[ObjectId.LENGTH], 0));
+                }
+                header.flip();
+                long size = header.remaining() + compressed.remaining();
+                if (IdTable.HEADER_SIZE + size > maxSize) {
+                    throw Utils.error("Object %s is too large to pack.", id.toHex());
+                }
+                if (position + size > maxSize) {
+                    finishPack();
+                    start();
+                }
+                ids.add(id);
+                types.add(type);
+                offsets.add(position);
+                position += writeFully(header);
+                position += writeFully(compressed);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+
+        private long writeFully(ByteBuffer buffer) throws IOException {
+            long written = 0;
+            while (buffer.hasRemaining()) {
+                written += out.write(buffer);
+            }
+            return written;
+        }
+
+        /** Finishes the pack being written and returns every pack written. */
+        public List<Pack> finish() {
+            if (!ids.isEmpty() || finished.isEmpty()) {
+                finishPack();
+            } else {
+                try {
+                    out.close();
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp);
+                }
+                tmpPack.delete();
+            }
+            return finished;
+        }
+
+        /** Writes the index of the current pack, checks that the pack opens
+         *  and gives both files their final names. */
+        private void finishPack() {
+            int n = ids.size();
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i += 1) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> ids.get(a).compareTo(ids.get(b)));
+
+            ByteBuffer index = ByteBuffer.allocate(IdTable.IDS_START
+                    + n * (ObjectId.LENGTH + 1 + 8));
+            index.putInt(IDX_MAGIC).putInt(VERSION).putInt(n);
+            ObjectId[] sorted = new ObjectId[n];
+            for (int i = 0; i < n; i += 1) {
+                sorted[i] = ids.get(order[i]);
+            }
+            IdTable.write(index, sorted);
+            for (int i = 0; i < n; i += 1) {
+                index.put(types.get(order[i]));
+            }
+            for (int i = 0; i < n; i += 1) {
+                index.putLong(offsets.get(order[i]));
+            }
+            index.flip();
+
+            try {
+                ByteBuffer count = ByteBuffer.allocate(4);
+                count.putInt(n).flip();
+                out.write(count, 8);
+                out.force(true);
+                out.close();
+
+                Utils.writeContents(tmpIdx, index.array());
+                try {
+                    new Pack(tmpIdx);
+                } catch (RuntimeException excp) {
+                    tmpIdx.delete();
+                    tmpPack.delete();
+                    throw excp;
+                }
+
+                String name = "pack-" + Utils.sha1(Arrays.copyOfRange(index.array(),
+                        IdTable.IDS_START, IdTable.IDS_START + n * ObjectId.LENGTH));
+                File packFile = new File(dir, name + ".pack");
+                File idxFile = new File(dir, name + ".idx");
+                if (!tmpPack.renameTo(packFile) || !tmpIdx.renameTo(idxFile)) {
+                    tmpIdx.delete();
+                    tmpPack.delete();
+                    packFile.delete();
+                    throw Utils.error("Could not write pack %s.", name);
+                }
+                finished.add(new Pack(idxFile));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+            ids.clear();
+            types.clear();
+            offsets.clear();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** Which commits each branch tip can reach, kept as a Bitmap of positions
+ *  in the commit graph. With it, "reachable from X", "in A but not in B"
+ *  and "reachable from no branch" are unions and differences of bitmaps
+ *  rather than walks over history.
+ *
+ *  The bitmaps file holds a header (magic, version, the number of commits
+ *  in the graph it was written for, the number of tips) and then, for each
+ *  tip, its 20-byte id, the length of its bitmap as an int and the bitmap.
+ *  It is rewritten by repack right after the commit graph, and ignored if
+ *  the graph no longer has the size it was written for.
+ *
+ *  A tip that has no bitmap of its own, because it moved since the last
+ *  repack, is walked: commits that are not in the graph are collected by
+ *  id, and the walk through the graph stops at every commit that has a
+ *  stored bitmap, taking that bitmap instead.
+ *  @author Kyusuk Oh
+ */
+public class ReachabilityIndex {
+
+    static final int MAGIC = 0x4249544d;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    private final CommitGraph graph;
+    /** Stored bitmaps, by the graph position of their tip. */
+    private final HashMap<Integer, Bitmap> stored = new HashMap<>();
+
+    /** The bitmaps in FILE, if it exists and was written for GRAPH. */
+    public ReachabilityIndex(File file, CommitGraph graph) {
+        this(graph);
+        if (!file.isFile()) {
+            return;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Utils.readContents(file));
+        if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw Utils.error("Corrupt reachability bitmaps.");
+        }
+        if (in.getInt() != graph.size()) {
+            return;
+        }
+        int tips = in.getInt();
+        for (int i = 0; i < tips; i += 1) {
+            ObjectId tip = new ObjectId(in.getLong(), in.getLong(), in.getInt());
+            int length = in.getInt();
+            int pos = graph.find(tip);
+            if (pos == CommitGraph.NONE) {
+                in.position(in.position() + length);
+            } else {
+                stored.put(pos, Bitmap.read(in));
+            }
+        }
+    }
+
+    /** An index of GRAPH with no stored bitmaps. */
+    private ReachabilityIndex(CommitGraph graph) {
+        this.graph = graph;
+    }
+
+    /** Returns the number of tips with a stored bitmap. */
+    public int size() {
+        return stored.size();
+    }
+
+    /** Returns the positions in the graph of the commits reachable from
+     *  TIP, itself included. Reachable commits that are not in the graph
+     *  are added to LOOSE; those already in it are not walked again. */
+    public Bitmap reachable(ObjectId tip, Set<ObjectId> loose) {
+        Bitmap result = new Bitmap();
+        ArrayDeque<Integer> positions = new ArrayDeque<>();
+        ArrayDeque<ObjectId> ids = new ArrayDeque<>();
+        ids.push(tip);
+        while (!ids.isEmpty()) {
+            ObjectId id = ids.pop();
+            int pos = graph.find(id);
+            if (pos != CommitGraph.NONE) {
+                positions.push(pos);
+            } else if (loose.add(id)) {
+                for (ObjectId parent : graph.looseParents(id)) {
+                    ids.push(parent);
+                }
+            }
+        }
+        while (!positions.isEmpty()) {
+            int pos = positions.pop();
+            if (result.contains(pos)) {
+                continue;
+            }
+            Bitmap bitmap = stored.get(pos);
+            if (bitmap != null) {
+                result.or(bitmap);
+                continue;
+            }
+            result.add(pos);
+            int parent = graph.parent(pos);
+            if (parent != CommitGraph.NONE) {
+                positions.push(parent);
+            }
+            parent = graph.branchParent(pos);
+            if (parent != CommitGraph.NONE) {
+                positions.push(parent);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the positions of every commit in the graph. */
+    public Bitmap all() {
+        Bitmap result = new Bitmap();
+        for (int pos = 0; pos < graph.size(); pos += 1) {
+            result.add(pos);
+        }
+        return result;
+    }
+
+    /** Writes to FILE the bitmaps of the commits TIPS in GRAPH. Tips that
+     *  are not in the graph are left out. Older tips are done first, so
+     *  that newer ones can start from their bitmaps. */
+    public static void write(File file, CommitGraph graph, Collection<ObjectId> tips) {
+        List<Integer> order = new ArrayList<>();
+        for (ObjectId tip : new HashSet<>(tips)) {
+            int pos = graph.find(tip);
+            if (pos != CommitGraph.NONE) {
+                order.add(pos);
+            }
+        }
+        order.sort((x, y) -> Integer.compare(graph.generation(x), graph.generation(y)));
+
+        ReachabilityIndex index = new ReachabilityIndex(graph);
+        int bytes = HEADER_SIZE;
+        for (int pos : order) {
+            Bitmap bitmap = index.reachable(graph.id(pos), new HashSet<>());
+            index.stored.put(pos, bitmap);
+            bytes += ObjectId.LENGTH + 4 + bitmap.serializedSize();
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(bytes);
+        out.putInt(MAGIC).putInt(VERSION).putInt(graph.size()).putInt(order.size());
+        byte[] id = new byte[ObjectId.LENGTH];
+        for (int pos : order) {
+            Bitmap bitmap = index.stored.get(pos);
+            out.put(graph.id(pos).copyTo(id, 0)).putInt(bitmap.serializedSize());
+            bitmap.write(out);
+        }
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Utils.writeContents(tmp, out.array());
+        if (!tmp.renameTo(file)) {
+            throw Utils.error("Could not write reachability bitmaps.");
+        }
+    }
+}
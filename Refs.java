@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.io.File;
+import java.util.List;
+
+/** Branch and HEAD pointers. Every branch is a tiny file under .gitlet/refs
+ *  holding the id of its tip commit, and .gitlet/HEAD holds the name of the
+ *  current branch, so moving a pointer never rewrites any commit.
+ *  @author Kyusuk Oh
+ */
+public class Refs {
+
+    /** Returns the name of the current branch. */
+    public static String currentBranch() {
+        return Utils.readContentsAsString(Repository.HEAD);
+    }
+
+    /** Makes BRANCHNAME the current branch. */
+    public static void setCurrentBranch(String branchName) {
+        Utils.writeContents(Repository.HEAD, branchName);
+    }
+
+    /** Returns the id of the commit at the tip of the current branch. */
+    public static ObjectId head() {
+        return branch(currentBranch());
+    }
+
+    /** Returns the id of the tip of BRANCHNAME, or null if there is no
+     *  such branch. */
+    public static ObjectId branch(String branchName) {
+        File ref = Utils.join(Repository.REFS, branchName);
+        if (!ref.isFile()) {
+            return null;
+        }
+        return ObjectId.fromHex(Utils.readContentsAsString(ref));
+    }
+
+    /** Points BRANCHNAME at COMMITID, creating the branch if needed. */
+    public static void setBranch(String branchName, ObjectId commitID) {
+        Utils.writeContents(Utils.join(Repository.REFS, branchName), commitID.toHex());
+    }
+
+    /** Deletes BRANCHNAME. Returns false if there was no such branch. */
+    public static boolean removeBranch(String branchName) {
+        return Utils.join(Repository.REFS, branchName).delete();
+    }
+
+    /** Returns the names of all branches in lexicographic order. */
+    public static List<String> branches() {
+        return Utils.plainFilenamesIn(Repository.REFS);
+    }
+}
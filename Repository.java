@@ -1,10 +1,10 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 
-import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -18,126 +18,236 @@ public class Repository implements Serializable {
     public static final File GITLET_DIR = join(CWD, ".gitlet");
     public static final File REPOSITORY = Utils.join(GITLET_DIR, "repository");
     public static final File REPO = new File(".gitlet/repository/repo.txt");
-    public static final File TO_ADD = Utils.join(GITLET_DIR, "to_add");
-    public static final File ADDMAP = new File(".gitlet/to_add/add.txt");
-    public static final File ADDLOG = new File(".gitlet/to_add/addlogmap.txt");
-    public static final File TO_REMOVE = Utils.join(GITLET_DIR, "to_remove");
-    public static final File REMOVEMAP = new File(".gitlet/to_remove/remove.txt");
     public static final File COMMITS = Utils.join(GITLET_DIR, "commits");
-    public static final File COMMITMAP = new File(".gitlet/commits/commit.txt");
+    public static final File REFS = Utils.join(GITLET_DIR, "refs");
+    public static final File HEAD = Utils.join(GITLET_DIR, "HEAD");
     public static final File TREE = Utils.join(GITLET_DIR, "tree");
     public static final File MAPS = new File(".gitlet/tree/maps.txt");
+    public static final File OBJECTS = Utils.join(GITLET_DIR, "objects");
+    public static final File DAEMON_SOCKET = Utils.join(GITLET_DIR, "daemon.sock");
+    public static final File INDEX = Utils.join(GITLET_DIR, "index");
+    public static final File PACKS = Utils.join(GITLET_DIR, "packs");
+    public static final File CHUNKS = Utils.join(GITLET_DIR, "chunks");
+    public static final File COMMIT_GRAPH = Utils.join(GITLET_DIR, "commit-graph");
+    public static final File BITMAPS = Utils.join(GITLET_DIR, "bitmaps");
+
+    /** Where blobs and commits are kept; rebuilt lazily after the
+     *  repository is deserialized. */
+    private transient ObjectStore objectStore;
+
+    /** Returns the store holding every blob and commit. */
+    public ObjectStore objects() {
+        if (objectStore == null) {
+            objectStore = new ObjectStore();
+        }
+        return objectStore;
+    }
+
+    /** Commits resolved so far in this process; rebuilt lazily after
+     *  the repository is deserialized. */
+    private transient CommitLoader commitLoader;
+
+    /** Returns the loader through which all commits are resolved. */
+    public CommitLoader commits() {
+        if (commitLoader == null) {
+            commitLoader = new CommitLoader(objects());
+        }
+        return commitLoader;
+    }
+
+    /** Parents and generation numbers of the commits, mapped from
+     *  COMMIT_GRAPH the first time they are needed. */
+    private transient CommitGraph commitGraph;
+
+    /** Returns the graph through which ancestry is answered. */
+    public CommitGraph graph() {
+        if (commitGraph == null) {
+            commitGraph = new CommitGraph(COMMIT_GRAPH, commits());
+        }
+        return commitGraph;
+    }
+
+    /** Reachability bitmaps of the branch tips, read from BITMAPS the
+     *  first time they are needed. */
+    private transient ReachabilityIndex reachabilityIndex;
+
+    /** Returns the index through which reachability is answered. */
+    public ReachabilityIndex reachability() {
+        if (reachabilityIndex == null) {
+            reachabilityIndex = new ReachabilityIndex(BITMAPS, graph());
+        }
+        return reachabilityIndex;
+    }
+
+    /** The staging area, read from MAPS the first time it is needed. */
+    private transient Tree stage;
+    /** True while MAPS and REPO writes are held back until flush(). */
+    private transient boolean deferWrites;
+    /** True if the staging area changed since it was last written. */
+    private transient boolean stageDirty;
+
+    /** Returns the staging area. */
+    private Tree tree() {
+        if (stage == null) {
+            stage = readObject(MAPS, Tree.class);
+        }
+        return stage;
+    }
+
+    /** Records that the staging area changed, writing it out unless
+     *  writes are being deferred. */
+    private void saveTree() {
+        if (deferWrites) {
+            stageDirty = true;
+        } else {
+            writeContents(MAPS, serialize(stage));
+        }
+    }
+
+    /** The stat cache of the working directory, read from INDEX the first
+     *  time it is needed. */
+    private transient Index index;
 
-    public static void init() throws IOException {
+    /** Returns the stat cache of the working directory. */
+    private Index index() {
+        if (index == null) {
+            index = INDEX.isFile() ? readObject(INDEX, Index.class) : new Index();
+        }
+        return index;
+    }
+
+    /** Writes the index out if it changed, unless writes are deferred. */
+    private void saveIndex() {
+        if (!deferWrites && index != null && index.isDirty()) {
+            writeContents(INDEX, serialize(index));
+            index.clean();
+        }
+    }
+
+    /** Returns the blob id of the contents of working file NAME, reading
+     *  and storing the file only if the index cannot vouch that it is
+     *  unchanged since it was last hashed or written. */
+    private String workingBlobID(String name) {
+        File file = Utils.join(CWD, name);
+        Index.Entry stat = Index.stat(file);
+        String blobID = index().cachedID(name, stat);
+        if (blobID == null || !objects().contains(blobID)) {
+            blobID = objects().put(file);
+            index().record(name, stat, blobID);
+        }
+        return blobID;
+    }
+
+    /** Writes the contents of blob BLOBID to working file NAME and notes
+     *  its new stat in the index. */
+    private void writeWorkingFile(String name, String blobID) {
+        File file = Utils.join(CWD, name);
+        objects().copyTo(blobID, file, index().cachedID(name, file));
+        index().recordWritten(name, file, blobID);
+    }
+
+    /** Holds back (DEFER true) or resumes writing the staging area and the
+     *  repository file after each command. Used by batch mode, which loads
+     *  the state once and flushes it at checkpoints and at the end. */
+    public void setDeferWrites(boolean defer) {
+        deferWrites = defer;
+    }
+
+    /** Writes the repository file after a command, unless deferred. */
+    public void save() {
+        if (!deferWrites) {
+            writeContents(REPO, serialize(this));
+        }
+    }
+
+    /** Writes out any staging-area and index changes and the repository
+     *  file. */
+    public void flush() {
+        if (stageDirty) {
+            writeContents(MAPS, serialize(stage));
+            stageDirty = false;
+        }
+        if (index != null && index.isDirty()) {
+            writeContents(INDEX, serialize(index));
+            index.clean();
+        }
+        writeContents(REPO, serialize(this));
+    }
+
+    public void init() throws IOException {
         if (GITLET_DIR.exists()) {
             System.out.println("A Gitlet version-control"
                     + " system already exists in the current directory.");
-            System.exit(0);
+            return;
         } else {
             GITLET_DIR.mkdir();
             REPOSITORY.mkdir();
             REPO.createNewFile();
-            TO_ADD.mkdir();
-            ADDLOG.createNewFile();
-            ADDMAP.createNewFile();
-            TO_REMOVE.mkdir();
-            REMOVEMAP.createNewFile();
             COMMITS.mkdir();
-            COMMITMAP.createNewFile();
+            REFS.mkdir();
             TREE.mkdir();
             MAPS.createNewFile();
+            OBJECTS.mkdir();
 
-            writeContents(ADDLOG, Utils.serialize(new HashMap<byte[], String>()));
-            writeContents(ADDMAP, Utils.serialize(new HashMap<String, byte[]>()));
-            writeContents(REMOVEMAP, Utils.serialize(new HashMap<String, byte[]>()));
-            writeContents(COMMITMAP, Utils.serialize(new HashMap<String, byte[]>()));
-            writeContents(MAPS, Utils.serialize(new Tree()));
-
-            //make empty commit, update HEAD, and write in commits file
-            Commit initialCommit = new Commit("initial commit", "", null);
-            Tree tree = Utils.readObject(MAPS, Tree.class);
-
-            HashMap<String, Commit> commitMap = tree.getCommitMap();
-            Commit head = tree.getHEAD();
-            HashMap<String, Commit> branches = tree.getBranches();
-            String currentBranch = tree.getCurrentBranch();
+            stage = new Tree();
+            writeContents(MAPS, Utils.serialize(stage));
 
-            commitMap.put(initialCommit.getID(), initialCommit);
-            head = initialCommit;
-            branches.put("main", initialCommit);
-            currentBranch = "main";
-
-            tree.setCommitMap(commitMap);
-            tree.setHEAD(head);
-            tree.setBranches(branches);
-            tree.setCurrentBranch(currentBranch);
-
-            Utils.writeContents(COMMITMAP, Utils.serialize(commitMap));
-            Utils.writeContents(MAPS, Utils.serialize(tree));
+            //make empty commit, point main and HEAD at it
+            Commit initialCommit = new Commit("initial commit", "", null,
+                    new HashMap<>(), new HashMap<>());
+            objects().putCommit(initialCommit);
+            Refs.setBranch("main", initialCommit.getID());
+            Refs.setCurrentBranch("main");
         }
     }
 
-    public static void add(String fileName) {
+    /** Returns the commit at the tip of the current branch. */
+    private Commit headCommit() {
+        return commits().load(Refs.head());
+    }
+
+    public void add(String fileName) {
         File fileToAdd = new File(fileName);
         if (!fileToAdd.exists()) {
             System.out.println("File does not exist.");
             return;
         }
-        Tree tree = readObject(MAPS, Tree.class);
-        HashMap<String, byte[]> stagedAdd = tree.getStagedAdd();
-        HashMap<String, byte[]> stagedRemove = tree.getStagedRemove();
-        Commit head = tree.getHEAD();
+        Tree tree = tree();
+        HashMap<String, String> stagedAdd = tree.getStagedAdd();
+        HashMap<String, String> stagedRemove = tree.getStagedRemove();
+        Commit head = headCommit();
 
         if (stagedRemove.containsKey(fileName)) {
             stagedRemove.remove(fileName);
         } else {
-            if (head.getCommitted().containsKey(fileName)) {
-                if (stagedAdd.containsKey(fileName)) {
-                    if (stagedAdd.get(fileName).equals(Utils.readContents(fileToAdd))) {
-                        return;
-                    } else {
-                        stagedAdd.put(fileName, Utils.readContents(fileToAdd));
-                    }
-                } else {
-                    if (Arrays.equals(head.getCommitted().get(fileName),
-                            Utils.readContents(fileToAdd))) {
-                        return;
-                    } else {
-                        stagedAdd.put(fileName, Utils.readContents(fileToAdd));
-                    }
+            //file bodies go to the object store once; staging only keeps ids
+            String blobID = workingBlobID(fileName);
+            saveIndex();
+            if (blobID.equals(head.getCommitted().get(fileName))) {
+                if (!stagedAdd.containsKey(fileName)) {
+                    return;
                 }
+                stagedAdd.remove(fileName);
+            } else if (blobID.equals(stagedAdd.get(fileName))) {
+                return;
             } else {
-                if (stagedAdd.containsKey(fileName)) {
-                    if (stagedAdd.get(fileName).equals(Utils.readContents(fileToAdd))) {
-                        return;
-                    } else {
-                        stagedAdd.put(fileName, Utils.readContents(fileToAdd));
-                    }
-                } else {
-                    stagedAdd.put(fileName, Utils.readContents(fileToAdd));
-                }
+                stagedAdd.put(fileName, blobID);
             }
         }
 
         tree.setStagedAdd(stagedAdd);
         tree.setStagedRemove(stagedRemove);
-        tree.setHEAD(head);
 
-        Utils.writeContents(REMOVEMAP, Utils.serialize(stagedRemove));
-        Utils.writeContents(ADDMAP, Utils.serialize(stagedAdd));
-        Utils.writeContents(MAPS, Utils.serialize(tree));
+        saveTree();
     }
 
-    public static void rm(String fileName) {
+    public void rm(String fileName) {
         File fileToRemove = new File(fileName);
 
-        Tree tree = readObject(MAPS, Tree.class);
-        HashMap<String, byte[]> stagedAdd = tree.getStagedAdd();
-        HashMap<String, byte[]> stagedRemove = tree.getStagedRemove();
-        Commit head = tree.getHEAD();
-
-        stagedAdd = readObject(ADDMAP, HashMap.class);
-        stagedRemove = readObject(REMOVEMAP, HashMap.class);
+        Tree tree = tree();
+        HashMap<String, String> stagedAdd = tree.getStagedAdd();
+        HashMap<String, String> stagedRemove = tree.getStagedRemove();
+        Commit head = headCommit();
 
         //if not in parent commit and not in current add
         if (!stagedAdd.containsKey(fileName) && !head.getCommitted().containsKey(fileName)) {
@@ -149,6 +259,8 @@ public class Repository implements Serializable {
         } else if (head.getCommitted().containsKey(fileName)) {
             stagedRemove.put(fileName, head.getCommitted().get(fileName));
             Utils.restrictedDelete(fileName);
+            index().forget(fileName);
+            saveIndex();
             if (stagedAdd.containsKey(fileName)) {
                 stagedAdd.remove(fileName);
             }
@@ -158,28 +270,19 @@ public class Repository implements Serializable {
 
         tree.setStagedAdd(stagedAdd);
         tree.setStagedRemove(stagedRemove);
-        tree.setHEAD(head);
 
-        Utils.writeContents(MAPS, Utils.serialize(tree));
-        Utils.writeContents(ADDMAP, Utils.serialize(stagedAdd));
-        Utils.writeContents(REMOVEMAP, Utils.serialize(stagedRemove));
+        saveTree();
     }
 
-    public static void commit(String message) {
+    public void commit(String message) {
         if (message.length() == 0) {
             System.out.println("Please enter a commit message.");
             return;
         } else {
-            Tree tree = Utils.readObject(MAPS, Tree.class);
-            HashMap<String, byte[]> stagedAdd = tree.getStagedAdd();
-            HashMap<String, byte[]> stagedRemove = tree.getStagedRemove();
-            HashMap<String, Commit> commitMap = tree.getCommitMap();
-            Commit head = tree.getHEAD();
-            HashMap<String, Commit> branches = tree.getBranches();
-            String currentBranch = tree.getCurrentBranch();
-
-            stagedAdd = Utils.readObject(ADDMAP, HashMap.class);
-            stagedRemove = Utils.readObject(REMOVEMAP, HashMap.class);
+            Tree tree = tree();
+            HashMap<String, String> stagedAdd = tree.getStagedAdd();
+            HashMap<String, String> stagedRemove = tree.getStagedRemove();
+            Commit head = headCommit();
 
             if (stagedAdd.isEmpty() && stagedRemove.isEmpty()) {
                 System.out.println("No changes added to the commit.");
@@ -188,48 +291,30 @@ public class Repository implements Serializable {
                 Date now = new Date();
                 SimpleDateFormat timeFormat = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
                 String commitTime = timeFormat.format(now);
-                Commit newCommit = new Commit(message, commitTime, head);
-
-                //set HEAD
-                head = newCommit;
-
-                //set branch
-                branches.remove(currentBranch);
-                branches.put(currentBranch, newCommit);
+                Commit newCommit = new Commit(message, commitTime, head,
+                        stagedAdd, stagedRemove);
 
-                //save to commit.txt
-                commitMap = Utils.readObject(COMMITMAP, HashMap.class);
-                commitMap.put(newCommit.getID(), newCommit);
+                //save commit in its own file, then move the branch
+                objects().putCommit(newCommit);
+                commits().put(newCommit);
+                Refs.setBranch(Refs.currentBranch(), newCommit.getID());
 
                 //clear staging area
                 stagedAdd.clear();
                 stagedRemove.clear();
-                Utils.writeContents(ADDMAP, Utils.serialize(stagedAdd));
-                Utils.writeContents(REMOVEMAP, Utils.serialize(stagedRemove));
-                Utils.writeContents(COMMITMAP, Utils.serialize(commitMap));
                 //save tree
                 tree.setStagedAdd(stagedAdd);
                 tree.setStagedRemove(stagedRemove);
-                tree.setCommitMap(commitMap);
-                tree.setHEAD(head);
-                tree.setBranches(branches);
-                tree.setCurrentBranch(currentBranch);
-                Utils.writeContents(MAPS, Utils.serialize(tree));
+                saveTree();
             }
         }
     }
 
-    public static void mergeCommit(String message, Commit branchCommit) {
-        Tree tree = Utils.readObject(MAPS, Tree.class);
-        HashMap<String, byte[]> stagedAdd = tree.getStagedAdd();
-        HashMap<String, byte[]> stagedRemove = tree.getStagedRemove();
-        HashMap<String, Commit> commitMap = tree.getCommitMap();
-        Commit head = tree.getHEAD();
-        HashMap<String, Commit> branches = tree.getBranches();
-        String currentBranch = tree.getCurrentBranch();
-
-        stagedAdd = Utils.readObject(ADDMAP, HashMap.class);
-        stagedRemove = Utils.readObject(REMOVEMAP, HashMap.class);
+    public void mergeCommit(String message, Commit branchCommit) {
+        Tree tree = tree();
+        HashMap<String, String> stagedAdd = tree.getStagedAdd();
+        HashMap<String, String> stagedRemove = tree.getStagedRemove();
+        Commit head = headCommit();
 
         if (stagedAdd.isEmpty() && stagedRemove.isEmpty()) {
             System.out.println("No changes added to the commit.");
@@ -238,39 +323,26 @@ public class Repository implements Serializable {
             Date now = new Date();
             SimpleDateFormat timeFormat = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z");
             String commitTime = timeFormat.format(now);
-            Commit newCommit = new Commit(message, commitTime, head, branchCommit);
-
-            //set HEAD
-            head = newCommit;
+            Commit newCommit = new Commit(message, commitTime, head, branchCommit,
+                    stagedAdd, stagedRemove);
 
-            //set branch
-            branches.remove(currentBranch);
-            branches.put(currentBranch, newCommit);
-
-            //save to commit.txt
-            commitMap = Utils.readObject(COMMITMAP, HashMap.class);
-            commitMap.put(newCommit.getID(), newCommit);
+            //save commit in its own file, then move the branch
+            objects().putCommit(newCommit);
+            commits().put(newCommit);
+            Refs.setBranch(Refs.currentBranch(), newCommit.getID());
 
             //clear staging area
             stagedAdd.clear();
             stagedRemove.clear();
-            Utils.writeContents(ADDMAP, Utils.serialize(stagedAdd));
-            Utils.writeContents(REMOVEMAP, Utils.serialize(stagedRemove));
-            Utils.writeContents(COMMITMAP, Utils.serialize(commitMap));
             //save tree
             tree.setStagedAdd(stagedAdd);
             tree.setStagedRemove(stagedRemove);
-            tree.setCommitMap(commitMap);
-            tree.setHEAD(head);
-            tree.setBranches(branches);
-            tree.setCurrentBranch(currentBranch);
-            Utils.writeContents(MAPS, Utils.serialize(tree));
+            saveTree();
         }
     }
 
-    public static void checkoutFile(String fileName) throws IOException {
-        Tree tree = readObject(MAPS, Tree.class);
-        Commit head = tree.getHEAD();
+    public void checkoutFile(String fileName) throws IOException {
+        Commit head = headCommit();
 
         if (head.getCommitted().containsKey(fileName)) {
             //delete if there is the file in cwd
@@ -278,58 +350,66 @@ public class Repository implements Serializable {
             if (checkExist) {
                 restrictedDelete(Utils.join(CWD, fileName));
             }
-            File newFile = Utils.join(CWD, fileName);
-
-            byte[] content = head.getCommitted().get(fileName);
-            Utils.writeContents(newFile, content);
+            writeWorkingFile(fileName, head.getCommitted().get(fileName));
+            saveIndex();
         } else {
             System.out.println("File does not exist in that commit.");
         }
     }
 
-    public static void checkoutCommit(String commitID, String fileName) {
-        Tree tree = readObject(MAPS, Tree.class);
-        HashMap<String, Commit> commitMap = tree.getCommitMap();
-        commitMap = tree.getCommitMap();
-
-        Boolean check = false;
-        String fullCommitID = "";
-        for (String fullID : commitMap.keySet()) {
-            if (fullID.contains(commitID)) {
-                check = true;
-                fullCommitID = fullID;
-            }
+    public void checkoutCommit(String commitID, String fileName) {
+        ObjectId fullCommitID = resolveCommit(commitID);
+        if (fullCommitID == null) {
+            return;
         }
-        if (!check) {
-            System.out.println("No commit with that id exists.");
-        } else if (!commitMap.get(fullCommitID).getCommitted().containsKey(fileName)) {
+        Commit commit = commits().load(fullCommitID);
+        if (!commit.getCommitted().containsKey(fileName)) {
             System.out.println("File does not exist in that commit.");
         } else {
-            File checkoutFile = Utils.join(CWD, fileName);
-            byte[] content1 = commitMap.get(fullCommitID).getCommitted().get(fileName);
-            Utils.writeContents(checkoutFile, content1);
+            writeWorkingFile(fileName, commit.getCommitted().get(fileName));
+            saveIndex();
+        }
+    }
+
+    /** Returns the id of the one stored commit whose id starts with
+     *  PREFIX, or prints an error and returns null if there is no such
+     *  commit or more than one. */
+    private ObjectId resolveCommit(String prefix) {
+        prefix = prefix.toLowerCase();
+        if (!ObjectId.isPrefix(prefix)) {
+            System.out.println("No commit with that id exists.");
+            return null;
         }
+        Set<ObjectId> matches = objects().commitsWithPrefix(prefix, 2);
+        if (matches.isEmpty()) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        } else if (matches.size() > 1) {
+            System.out.println("Commit id " + prefix + " is ambiguous.");
+            return null;
+        }
+        return matches.iterator().next();
     }
-    public static void checkoutBranch(String branchName) {
-        Tree tree = readObject(MAPS, Tree.class);
-        HashMap<String, byte[]> stagedAdd = tree.getStagedAdd();
-        HashMap<String, byte[]> stagedRemove = tree.getStagedRemove();
-        HashMap<String, Commit> commitMap = tree.getCommitMap();
-        Commit head = tree.getHEAD();
-        HashMap<String, Commit> branches = tree.getBranches();
-        String currentBranch = tree.getCurrentBranch();
 
-        if (!branches.containsKey(branchName)) {
+    public void checkoutBranch(String branchName) {
+        Tree tree = tree();
+        HashMap<String, String> stagedAdd = tree.getStagedAdd();
+        HashMap<String, String> stagedRemove = tree.getStagedRemove();
+        Commit head = headCommit();
+        String currentBranch = Refs.currentBranch();
+
+        if (Refs.branch(branchName) == null) {
             System.out.println("No such branch exists.");
             return;
         } else if (currentBranch.equals(branchName)) {
             System.out.println("No need to checkout the current branch.");
             return;
         } else {
+            Commit commitOfGivenBranch = commits().load(Refs.branch(branchName));
             String[] listofFiles = CWD.list();
             //check untracked existence
             for (String checkOverWrite : listofFiles) {
-                if (branches.get(branchName).getCommitted().containsKey(checkOverWrite)
+                if (commitOfGivenBranch.getCommitted().containsKey(checkOverWrite)
                         && !head.getCommitted().containsKey(checkOverWrite)) {
                     System.out.println("There is an untracked file in the way;"
                             + " delete it, or add and commit it first.");
@@ -341,88 +421,94 @@ public class Repository implements Serializable {
             stagedAdd.clear();
             stagedRemove.clear();
 
-            Commit commitOfGivenBranch = branches.get(branchName);
-            for (File a : CWD.listFiles()) {
-                a.delete();
-            }
-            for (String file : commitOfGivenBranch.getCommitted().keySet()) {
-                File checkoutFile = Utils.join(CWD, file);
-                byte[] content = commitOfGivenBranch.getCommitted().get(file);
-                Utils.writeContents(checkoutFile, content);
-            }
+            checkoutTree(head, commitOfGivenBranch);
             //set given branch as HEAD
-            head = commitOfGivenBranch;
-            currentBranch = branchName;
+            Refs.setCurrentBranch(branchName);
             //save
             tree.setStagedAdd(stagedAdd);
             tree.setStagedRemove(stagedRemove);
-            tree.setCommitMap(commitMap);
-            tree.setHEAD(head);
-            tree.setBranches(branches);
-            tree.setCurrentBranch(currentBranch);
 
-            Utils.writeContents(MAPS, Utils.serialize(tree));
+            saveTree();
         }
     }
 
+    /** Changes the working directory from the files of CURRENT to those of
+     *  TARGET. Only paths whose blob ids differ between the two commits are
+     *  deleted or written. Paths that are the same in both are rewritten
+     *  only if the working copy was changed, which the index can usually
+     *  rule out with a single stat, so untouched files keep their mtimes. */
+    private void checkoutTree(Commit current, Commit target) {
+        HashMap<String, String> currentFiles = current.getCommitted();
+        HashMap<String, String> targetFiles = target.getCommitted();
+        WorkingTreeWriter writer = new WorkingTreeWriter(objects(), index());
+
+        //delete tracked files the target does not have
+        for (String fileName : currentFiles.keySet()) {
+            if (!targetFiles.containsKey(fileName)) {
+                writer.delete(fileName);
+            }
+        }
 
-    public static void log() {
-        Tree tree = readObject(MAPS, Tree.class);
-        Commit head = tree.getHEAD();
+        //write files that differ between the commits, or in the working copy
+        List<String> unchanged = new ArrayList<String>();
+        for (String fileName : targetFiles.keySet()) {
+            if (targetFiles.get(fileName).equals(currentFiles.get(fileName))) {
+                unchanged.add(fileName);
+            } else {
+                writer.write(fileName, targetFiles.get(fileName));
+            }
+        }
+        HashMap<String, String> workingIDs =
+                new WorkingTreeScanner(index()).hash(CWD, unchanged);
+        for (String fileName : unchanged) {
+            if (!targetFiles.get(fileName).equals(workingIDs.get(fileName))) {
+                writer.write(fileName, targetFiles.get(fileName));
+            }
+        }
+        writer.apply();
+        saveIndex();
+    }
+
+    public void log() {
+        Commit head = headCommit();
         Commit pointer = head;
         while (pointer != null) {
             pointer.log();
-            pointer = pointer.getParent();
+            pointer = commits().load(pointer.getParentID());
         }
 
     }
 
-    public static void globalLog() {
-        Tree tree = Utils.readObject(MAPS, Tree.class);
-        HashMap<String, Commit> commitMap = tree.getCommitMap();
-        commitMap = Utils.readObject(COMMITMAP, HashMap.class);
-        for (Commit a : commitMap.values()) {
-            a.log();
+    public void globalLog() {
+        for (ObjectId id : objects().commitIDs()) {
+            commits().load(id).log();
         }
     }
 
-    public static void branch(String newBranchName) {
-
-        Tree tree = readObject(MAPS, Tree.class);
-        HashMap<String, Commit> branches = tree.getBranches();
-        Commit head = tree.getHEAD();
-        if (branches.keySet().contains(newBranchName)) {
+    public void branch(String newBranchName) {
+        if (Refs.branch(newBranchName) != null) {
             System.out.println("A branch with that name already exists.");
         } else {
-            Commit currHEAD = head;
-            branches.put(newBranchName, currHEAD);
+            Refs.setBranch(newBranchName, Refs.head());
         }
-        tree.setBranches(branches);
-        Utils.writeContents(MAPS, Utils.serialize(tree));
     }
 
-    public static void rmBranch(String branchName) {
-        Tree tree = Utils.readObject(MAPS, Tree.class);
-        HashMap<String, Commit> branches = tree.getBranches();
-        String currentBranch = tree.getCurrentBranch();
+    public void rmBranch(String branchName) {
+        String currentBranch = Refs.currentBranch();
         if (currentBranch.equals(branchName)) {
             System.out.println("Cannot remove the current branch.");
-        } else if (branches.containsKey(branchName)) {
-            branches.remove(branchName);
-            tree.setBranches(branches);
-            Utils.writeContents(MAPS, Utils.serialize(tree));
-        } else {
+        } else if (!Refs.removeBranch(branchName)) {
             System.out.println("A branch with that name does not exist.");
         }
     }
 
 
     public void status() {
-        Tree tree = readObject(MAPS, Tree.class);
-        HashMap<String, Commit> branches = tree.getBranches();
-        String currentBranch = tree.getCurrentBranch();
-        HashMap<String, byte[]> stagedAdd = tree.getStagedAdd();
-        HashMap<String, byte[]> stagedRemove = tree.getStagedRemove();
+        Tree tree = tree();
+        List<String> branches = Refs.branches();
+        String currentBranch = Refs.currentBranch();
+        HashMap<String, String> stagedAdd = tree.getStagedAdd();
+        HashMap<String, String> stagedRemove = tree.getStagedRemove();
 
         System.out.println("=== Branches ===");
         if (branches.size() == 1) {
@@ -431,7 +517,7 @@ public class Repository implements Serializable {
         } else {
             String main = "";
             String other = "";
-            for (String branchName : branches.keySet()) {
+            for (String branchName : branches) {
                 if (branchName.equals("main")) {
                     if (currentBranch.equals(branchName)) {
                         main = "*main";
@@ -439,7 +525,7 @@ public class Repository implements Serializable {
                         main = "main";
                     }
                 } else {
-                    if (currentBranch == branchName) {
+                    if (currentBranch.equals(branchName)) {
                         other = "*" + branchName;
                     } else {
                         other = branchName;
@@ -475,21 +561,61 @@ public class Repository implements Serializable {
         }
         System.out.println();
 
+        //hash only the files that are tracked or staged, several at a time
+        HashMap<String, String> headFiles = headCommit().getCommitted();
+        List<String> workingFiles = plainFilenamesIn(CWD);
+        List<String> candidates = new ArrayList<String>();
+        for (String fileName : workingFiles) {
+            if (headFiles.containsKey(fileName) || stagedAdd.containsKey(fileName)) {
+                candidates.add(fileName);
+            }
+        }
+        HashMap<String, String> workingIDs =
+                new WorkingTreeScanner(index()).hash(CWD, candidates);
+        saveIndex();
+
         //modifications not staged
         System.out.println("=== Modifications Not Staged For Commit ===");
+        TreeMap<String, String> modified = new TreeMap<>();
+        for (String fileName : headFiles.keySet()) {
+            if (stagedAdd.containsKey(fileName)) {
+                continue;
+            }
+            if (!workingIDs.containsKey(fileName)) {
+                if (!stagedRemove.containsKey(fileName)) {
+                    modified.put(fileName, "deleted");
+                }
+            } else if (!workingIDs.get(fileName).equals(headFiles.get(fileName))) {
+                modified.put(fileName, "modified");
+            }
+        }
+        for (String fileName : stagedAdd.keySet()) {
+            if (!workingIDs.containsKey(fileName)) {
+                modified.put(fileName, "deleted");
+            } else if (!workingIDs.get(fileName).equals(stagedAdd.get(fileName))) {
+                modified.put(fileName, "modified");
+            }
+        }
+        for (String fileName : modified.keySet()) {
+            System.out.println(fileName + " (" + modified.get(fileName) + ")");
+        }
         System.out.println();
 
         //untracked files
         System.out.println("=== Untracked Files ===");
+        for (String fileName : workingFiles) {
+            if (!stagedAdd.containsKey(fileName)
+                    && (!headFiles.containsKey(fileName) || stagedRemove.containsKey(fileName))) {
+                System.out.println(fileName);
+            }
+        }
+        System.out.println();
     }
 
     public void find(String cmsg) {
-
-        Tree tree = Utils.readObject(MAPS, Tree.class);
-        HashMap<String, Commit> commitMap = tree.getCommitMap();
-        commitMap = Utils.readObject(COMMITMAP, HashMap.class);
         Boolean checkExist = false;
-        for (Commit a : commitMap.values()) {
+        for (ObjectId id : objects().commitIDs()) {
+            Commit a = commits().load(id);
             if (a.getMessage().equals(cmsg)) {
                 System.out.println(a.getID());
                 checkExist = true;
@@ -500,30 +626,144 @@ public class Repository implements Serializable {
         }
     }
 
+    /** Prints the ids of the commits reachable from at least one of the
+     *  branches named in ARGS and from none of those named with a leading
+     *  '^', in order. With "--unreachable" instead, prints the commits that
+     *  no branch reaches. */
+    public void revList(String[] args) {
+        ReachabilityIndex index = reachability();
+        Bitmap included = new Bitmap();
+        Set<ObjectId> includedLoose = new HashSet<>();
+        Bitmap excluded = new Bitmap();
+        Set<ObjectId> excludedLoose = new HashSet<>();
+        boolean unreachable = args.length == 1 && args[0].equals("--unreachable");
+        if (unreachable) {
+            included = index.all();
+            for (ObjectId id : objects().looseCommitIDs()) {
+                if (graph().find(id) == CommitGraph.NONE) {
+                    includedLoose.add(id);
+                }
+            }
+            for (String branch : Refs.branches()) {
+                excluded.or(index.reachable(Refs.branch(branch), excludedLoose));
+            }
+        } else {
+            for (String arg : args) {
+                boolean exclude = arg.startsWith("^");
+                ObjectId tip = Refs.branch(exclude ? arg.substring(1) : arg);
+                if (tip == null) {
+                    System.out.println("A branch with that name does not exist.");
+                    return;
+                } else if (exclude) {
+                    excluded.or(index.reachable(tip, excludedLoose));
+                } else {
+                    included.or(index.reachable(tip, includedLoose));
+                }
+            }
+        }
+        included.andNot(excluded);
+        includedLoose.removeAll(excludedLoose);
+        List<ObjectId> ids = new ArrayList<>(includedLoose);
+        included.forEach(pos -> ids.add(graph().id(pos)));
+        Collections.sort(ids);
+        for (ObjectId id : ids) {
+            System.out.println(id);
+        }
+    }
+
+    /** Prints a unified diff between two versions of the tracked files.
+     *  ARGS holds up to two commit ids, optionally followed by "--" and a
+     *  file name to limit the diff to. Two commits are compared with each
+     *  other, and one with the working directory; with none, the files as
+     *  the next commit would record them are compared with the working
+     *  directory. */
+    public void diff(String[] args) throws IOException {
+        int separator = Arrays.asList(args).indexOf("--");
+        int commitCount = separator < 0 ? args.length : separator;
+        if (commitCount > 2 || (separator >= 0 && args.length != separator + 2)) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        Map<String, String> before;
+        Map<String, String> after = null;
+        if (commitCount == 0) {
+            Tree tree = tree();
+            before = new HashMap<>(headCommit().getCommitted());
+            before.putAll(tree.getStagedAdd());
+            before.keySet().removeAll(tree.getStagedRemove().keySet());
+        } else {
+            ObjectId beforeID = resolveCommit(args[0]);
+            if (beforeID == null) {
+                return;
+            }
+            before = commits().load(beforeID).getCommitted();
+            if (commitCount == 2) {
+                ObjectId afterID = resolveCommit(args[1]);
+                if (afterID == null) {
+                    return;
+                }
+                after = commits().load(afterID).getCommitted();
+            }
+        }
+        TreeSet<String> names = new TreeSet<>(before.keySet());
+        if (after != null) {
+            names.addAll(after.keySet());
+        }
+        if (separator >= 0) {
+            names = new TreeSet<>(List.of(args[separator + 1]));
+        }
+
+        //only files whose blob ids differ are read and diffed
+        Hasher hasher = new Hasher();
+        BufferedOutputStream out = new BufferedOutputStream(System.out);
+        for (String name : names) {
+            String beforeID = before.get(name);
+            File file = Utils.join(CWD, name);
+            String afterID;
+            if (after != null) {
+                afterID = after.get(name);
+            } else if (!file.isFile()) {
+                afterID = null;
+            } else {
+                afterID = index().cachedID(name, file);
+                if (afterID == null) {
+                    afterID = hasher.hash(file);
+                }
+            }
+            if (Objects.equals(beforeID, afterID)) {
+                continue;
+            }
+            byte[] beforeData = beforeID == null ? null : objects().get(beforeID);
+            byte[] afterData = afterID == null ? null
+                    : after != null ? objects().get(afterID) : Utils.readContents(file);
+            Diff.writeFile(out, name, beforeData, afterData);
+        }
+        out.flush();
+    }
+
     private boolean mergeCheck(String branchName) {
-        Tree tree = Utils.readObject(MAPS, Tree.class);
-        HashMap<String, byte[]> stagedAdd = tree.getStagedAdd();
-        HashMap<String, byte[]> stagedRemove = tree.getStagedRemove();
-        HashMap<String, Commit> commitMap = tree.getCommitMap();
-        Commit head = tree.getHEAD();
-        HashMap<String, Commit> branches = tree.getBranches();
-        String currentBranch = tree.getCurrentBranch();
+        Tree tree = tree();
+        HashMap<String, String> stagedAdd = tree.getStagedAdd();
+        HashMap<String, String> stagedRemove = tree.getStagedRemove();
+        ObjectId branchID = Refs.branch(branchName);
         //check errors and exceptions
         if (!stagedAdd.isEmpty() || !stagedRemove.isEmpty()) {
             System.out.println("You have uncommitted changes.");
             return false;
-        } else if (!branches.containsKey(branchName)) {
+        } else if (branchID == null) {
             System.out.println("A branch with that name does not exist.");
             return false;
-        } else if (branches.get(branchName).equals(head)) {
+        } else if (branchID.equals(Refs.head())) {
             System.out.println("Cannot merge a branch with itself.");
             return false;
         }
 
         //check untracked existence
+        Commit head = headCommit();
+        Commit branchCommit = commits().load(branchID);
         String[] listOfFiles = CWD.list();
         for (String checkOverWrite : listOfFiles) {
-            if (branches.get(branchName).getCommitted().containsKey(checkOverWrite)
+            if (branchCommit.getCommitted().containsKey(checkOverWrite)
                     && !head.getCommitted().containsKey(checkOverWrite)) {
                 System.out.println("There is an untracked file in the way;"
                         + " delete it, or add and commit it first.");
@@ -533,62 +773,30 @@ public class Repository implements Serializable {
         return true;
     }
 
+    /** Returns the split point of the current branch and BRANCHNAME, or
+     *  null after reporting that one branch already contains the other.
+     *  When criss-crossing merges leave several best common ancestors, the
+     *  one with the largest generation is used. */
     public Commit findSplitPoint(String branchName) {
-        Tree tree = Utils.readObject(MAPS, Tree.class);
-        Commit head = tree.getHEAD();
-        HashMap<String, Commit> branches = tree.getBranches();
-
-        //find split point
-        Commit headPtr = head;
-        Commit branchPtr = branches.get(branchName);
-        Commit splitPoint = null;
-        HashSet<String> current = new HashSet<>();
-        Commit branchParentExistPtr = null;
-        Commit ptr2 = null;
-
-        while (headPtr != null) {
-            if (headPtr.getBranchParent() != null) {
-                branchParentExistPtr = headPtr.getBranchParent();
-            }
-            current.add(headPtr.getID());
-            headPtr = headPtr.getParent();
-        }
-        while (branchParentExistPtr != null) {
-            current.add(branchParentExistPtr.getID());
-            if (branchParentExistPtr.getBranchParent() != null) {
-                ptr2 = branchParentExistPtr.getBranchParent();
-            }
-            branchParentExistPtr = branchParentExistPtr.getParent();
-        }
-        while (ptr2 != null) {
-            current.add(ptr2.getID());
-            ptr2 = ptr2.getParent();
-        }
-        while (branchPtr != null) {
-            if (current.contains(branchPtr.getID())) {
-                splitPoint = branchPtr;
-                break;
-            }
-            branchPtr = branchPtr.getParent();
-        }
+        ObjectId headID = Refs.head();
+        ObjectId branchID = Refs.branch(branchName);
+        List<ObjectId> bases = graph().mergeBases(headID, branchID);
         //check ancestor
-        if (current.contains(branches.get(branchName).getID())) {
+        if (bases.contains(branchID)) {
             System.out.println("Given branch is an ancestor of the current branch.");
             return null;
         }
         //check fast-forward
-        if (splitPoint.getID().equals(head.getID())) {
+        if (bases.contains(headID)) {
             System.out.println("Current branch fast-forwarded.");
             checkoutBranch(branchName);
             return null;
         }
-        return splitPoint;
+        return commits().load(bases.get(0));
     }
 
     public void merge(String branchName) {
-        Tree tree = Utils.readObject(MAPS, Tree.class);
-        HashMap<String, Commit> branches = tree.getBranches();
-        String currentBranch = tree.getCurrentBranch();
+        String currentBranch = Refs.currentBranch();
         if (!mergeCheck(branchName)) {
             return;
         }
@@ -596,97 +804,67 @@ public class Repository implements Serializable {
         if (splitPoint == null) {
             return;
         }
-        //merge
-        HashMap<String, byte[]> headFiles = tree.getHEAD().getCommitted();
-        HashMap<String, byte[]> branchFiles = branches.get(branchName).getCommitted();
-        HashMap<String, byte[]> splitFiles = splitPoint.getCommitted();
-        boolean checkConflict = false;
-        for (String file : headFiles.keySet()) {
-            byte[] headContent = headFiles.get(file);
-            byte[] branchContent = branchFiles.get(file);
-            byte[] splitContent = splitFiles.get(file);
-            if (splitFiles.containsKey(file) && branchFiles.containsKey(file)) {
-                if (Arrays.equals(headContent, splitContent)
-                        && !Arrays.equals(branchContent, splitContent)) {
-                    checkoutCommit(branches.get(branchName).getID(), file);
-                    add(file);
-                }
-                if (!Arrays.equals(headContent, branchContent)
-                        && !Arrays.equals(splitContent, headContent)
-                        && !Arrays.equals(splitContent, branchContent)) {
-                    File newFile = Utils.join(CWD, file);
-                    byte[] newContent =
-                            addContent("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8),
-                            headContent);
-                    newContent = addContent(newContent,
-                            "=======\n".getBytes(StandardCharsets.UTF_8));
-                    newContent = addContent(newContent, branchContent);
-                    newContent = addContent(newContent,
-                            ">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
-                    Utils.writeContents(newFile, newContent);
-                    checkConflict = true;
-                }
-            } else if (!branchFiles.containsKey(file) && splitFiles.containsKey(file)) {
-                if (!Arrays.equals(splitContent, headContent)) {
-                    File newFile = Utils.join(CWD, file);
-                    byte[] newContent =
-                            addContent("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8),
-                                    headContent);
-                    newContent = addContent(newContent,
-                            "=======\n".getBytes(StandardCharsets.UTF_8));
-                    newContent = addContent(newContent,
-                            ">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
-                    Utils.writeContents(newFile, newContent);
-                    checkConflict = true;
-                }
+        //plan every file first, then stage and write them all at once
+        long start = System.nanoTime();
+        Commit branchCommit = commits().load(Refs.branch(branchName));
+        HashMap<String, String> headFiles = headCommit().getCommitted();
+        MergePlan plan = new MergePlan(splitPoint.getCommitted(), headFiles,
+                branchCommit.getCommitted());
+        int merges = plan.getMerges();
+        long planned = System.nanoTime();
+        plan.resolve(objects());
+        long resolved = System.nanoTime();
+
+        Tree tree = tree();
+        HashMap<String, String> stagedAdd = tree.getStagedAdd();
+        HashMap<String, String> stagedRemove = tree.getStagedRemove();
+        WorkingTreeWriter writer = new WorkingTreeWriter(objects(), index());
+        for (Map.Entry<String, String> take : plan.getTakes().entrySet()) {
+            String file = take.getKey();
+            if (!take.getValue().equals(headFiles.get(file))) {
+                stagedAdd.put(file, take.getValue());
+                writer.write(file, take.getValue());
             }
         }
-        for (String file : branches.get(branchName).getCommitted().keySet()) {
-            if (!splitFiles.containsKey(file)) {
-                checkoutCommit(branches.get(branchName).getID(), file);
-                add(file);
-            }
+        for (String file : plan.getDeletes()) {
+            stagedRemove.put(file, headFiles.get(file));
+            writer.delete(file);
         }
-        for (String file : splitPoint.getCommitted().keySet()) {
-            if (headFiles.containsKey(file) && !branchFiles.containsKey(file)) {
-                if (Arrays.equals(splitPoint.getCommitted().get(file), headFiles.get(file))) {
-                    rm(file);
-                }
-            }
-        }
-        if (checkConflict) {
+        tree.setStagedAdd(stagedAdd);
+        tree.setStagedRemove(stagedRemove);
+        saveTree();
+        long staged = System.nanoTime();
+        writer.apply();
+        saveIndex();
+        Utils.verbose("merge: planned %d files (%d merged, %d conflicted) in %.1fms,"
+                        + " merged in %.1fms, staged in %.1fms, written in %.1fms",
+                plan.size(), merges, plan.conflicts(), (planned - start) / 1e6,
+                (resolved - planned) / 1e6, (staged - resolved) / 1e6,
+                (System.nanoTime() - staged) / 1e6);
+        if (plan.conflicts() > 0) {
             System.out.println("Encountered a merge conflict.");
         }
         mergeCommit("Merged " + branchName + " into "
-                + currentBranch + ".", branches.get(branchName));
-    }
-
-    private byte[] addContent(byte[] first, byte[] second) {
-        byte[] toReturn = new byte[first.length + second.length];
-        System.arraycopy(first, 0, toReturn, 0, first.length);
-        System.arraycopy(second, 0, toReturn, first.length, second.length);
-        return toReturn;
+                + currentBranch + ".", branchCommit);
     }
 
-    public static void reset(String commitID) {
-        Tree tree = Utils.readObject(MAPS, Tree.class);
-        HashMap<String, Commit> commitMap = tree.getCommitMap();
-        Commit head = tree.getHEAD();
-        commitMap = Utils.readObject(COMMITMAP, HashMap.class);
-        HashMap<String, byte[]> stagedAdd = tree.getStagedAdd();
-        HashMap<String, byte[]> stagedRemove = tree.getStagedRemove();
-        String currentBranch = tree.getCurrentBranch();
-        HashMap<String, Commit> branches = tree.getBranches();
+    public void reset(String commitID) {
+        Tree tree = tree();
+        Commit head = headCommit();
+        HashMap<String, String> stagedAdd = tree.getStagedAdd();
+        HashMap<String, String> stagedRemove = tree.getStagedRemove();
+        String currentBranch = Refs.currentBranch();
 
         //check if commit exists, or untracked file exists
-        if (!commitMap.containsKey(commitID)) {
-            System.out.println("No commit with that id exists.");
+        ObjectId targetID = resolveCommit(commitID);
+        if (targetID == null) {
             return;
         }
+        Commit target = commits().load(targetID);
         String[] listOfFiles = CWD.list();
         //check untracked existence
         for (String checkOverWrite : listOfFiles) {
-            if (commitMap.get(commitID).getCommitted().containsKey(checkOverWrite)
+            if (target.getCommitted().containsKey(checkOverWrite)
                     && !head.getCommitted().containsKey(checkOverWrite)) {
                 System.out.println("There is an untracked file in the way;"
                         + " delete it, or add and commit it first.");
@@ -694,40 +872,78 @@ public class Repository implements Serializable {
             }
         }
 
-        //delete
-        for (String fileName : listOfFiles) {
-            if (!commitMap.get(commitID).getCommitted().containsKey(fileName)) {
-                Utils.restrictedDelete(fileName);
-            }
-        }
+        checkoutTree(head, target);
 
-        //add
-        for (String fileName : commitMap.get(commitID).getCommitted().keySet()) {
-            File newly = Utils.join(GITLET_DIR, fileName);
-            Utils.writeContents(newly, commitMap.get(commitID).getCommitted().get(fileName));
-        }
-
-        head = commitMap.get(commitID);
-        String currBranch = currentBranch;
-        branches.remove(currBranch);
-        branches.put(currBranch, head);
+        Refs.setBranch(currentBranch, target.getID());
 
         stagedAdd.clear();
         stagedRemove.clear();
-        Utils.writeContents(ADDMAP, Utils.serialize(stagedAdd));
-        Utils.writeContents(REMOVEMAP, Utils.serialize(stagedRemove));
 
         tree.setStagedAdd(stagedAdd);
         tree.setStagedRemove(stagedRemove);
-        tree.setHEAD(head);
-        tree.setBranches(branches);
-        tree.setCurrentBranch(currentBranch);
-        tree.setCommitMap(commitMap);
-        Utils.writeContents(MAPS, Utils.serialize(tree));
+        saveTree();
     }
 
-}
-
 
+    /** Moves every commit, together with the blobs those commits and the
+     *  staging area refer to, into a single pack, replacing any earlier
+     *  packs and the loose copies of those objects, and rewrites the
+     *  commit graph and the reachability bitmaps of the branches. Unreachable commits are
+     *  kept as well, since global-log lists every commit ever made. The
+     *  versions of each file are handed over newest first, so that the
+     *  versions most often checked out are the ones stored whole. */
+    public void repack() {
+        long start = System.nanoTime();
+        Set<ObjectId> commitIDs = objects().commitIDs();
+        List<ObjectId> order = new ArrayList<>();
+        Set<ObjectId> seen = new HashSet<>();
+        Deque<ObjectId> toVisit = new ArrayDeque<>();
+        for (String branch : Refs.branches()) {
+            toVisit.addLast(Refs.branch(branch));
+        }
+        toVisit.addAll(commitIDs);
+        while (!toVisit.isEmpty()) {
+            ObjectId id = toVisit.pollFirst();
+            if (!seen.add(id)) {
+                continue;
+            }
+            order.add(id);
+            Commit commit = commits().load(id);
+            if (commit.getBranchParentID() != null) {
+                toVisit.addFirst(commit.getBranchParentID());
+            }
+            if (commit.getParentID() != null) {
+                toVisit.addFirst(commit.getParentID());
+            }
+        }
 
+        Map<String, List<String>> versions = new TreeMap<>();
+        Set<String> blobIDs = new HashSet<>();
+        for (Map.Entry<String, String> staged : tree().getStagedAdd().entrySet()) {
+            versions.computeIfAbsent(staged.getKey(), k -> new ArrayList<>()).add(staged.getValue());
+            blobIDs.add(staged.getValue());
+        }
+        for (ObjectId id : order) {
+            for (Map.Entry<String, String> file : commits().load(id).getCommitted().entrySet()) {
+                if (blobIDs.add(file.getValue())) {
+                    versions.computeIfAbsent(file.getKey(), k -> new ArrayList<>())
+                            .add(file.getValue());
+                }
+            }
+        }
 
+        List<Pack> packs = objects().repack(commitIDs, versions.values());
+        //every stored commit is packed, so the graph covers all of them
+        CommitGraph.write(COMMIT_GRAPH, commitIDs, commits());
+        commitGraph = null;
+        List<ObjectId> tips = new ArrayList<>();
+        for (String branch : Refs.branches()) {
+            tips.add(Refs.branch(branch));
+        }
+        ReachabilityIndex.write(BITMAPS, graph(), tips);
+        reachabilityIndex = null;
+        Utils.verbose("repack: %d commits and %d blobs into %d packs in %.1fms",
+                commitIDs.size(), blobIDs.size(), packs.size(),
+                (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -15,7 +15,6 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -47,16 +46,40 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return toHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Hexadecimal digits, indexed by their value. */
+    static final String HEX_DIGITS = "0123456789abcdef";
+
+    /** Returns the lower-case hexadecimal numeral for BYTES. */
+    static String toHex(byte[] bytes) {
+        return new String(toHex(bytes, new char[2 * bytes.length]));
+    }
+
+    /** Writes the lower-case hexadecimal numeral for BYTES into HEX, which
+     *  must have room for it, and returns HEX. */
+    static char[] toHex(byte[] bytes, char[] hex) {
+        for (int i = 0; i < bytes.length; i += 1) {
+            hex[2 * i] = HEX_DIGITS.charAt((bytes[i] >> 4) & 0xf);
+            hex[2 * i + 1] = HEX_DIGITS.charAt(bytes[i] & 0xf);
+        }
+        return hex;
+    }
+
+    /** Returns BYTES filled with the first BYTES.length bytes denoted by
+     *  the hexadecimal numeral HEX. */
+    static byte[] fromHex(String hex, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i += 1) {
+            bytes[i] = (byte) (Character.digit(hex.charAt(2 * i), 16) << 4
+                    | Character.digit(hex.charAt(2 * i + 1), 16));
+        }
+        return bytes;
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -236,4 +259,19 @@ class Utils {
         System.out.printf(msg, args);
         System.out.println();
     }
+
+    /** Returns true if diagnostics were requested with -Dgitlet.verbose. */
+    static boolean isVerbose() {
+        return Boolean.getBoolean("gitlet.verbose");
+    }
+
+    /** When running verbosely, print a message composed from MSG and ARGS
+     *  as for the String.format method on System.err, so that regular
+     *  command output is unaffected. */
+    static void verbose(String msg, Object... args) {
+        if (isVerbose()) {
+            System.err.printf(msg, args);
+            System.err.println();
+        }
+    }
 }
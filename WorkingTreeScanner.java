@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Computes the blob ids of working files. The index is consulted first, so
+ *  only files whose stat changed since they were last hashed are read; those
+ *  are then hashed concurrently on a fork-join pool.
+ *  @author Kyusuk Oh
+ */
+public class WorkingTreeScanner {
+
+    /** Files are hashed in tasks of at most this many. */
+    static final int CHUNK = 16;
+
+    private final Index index;
+    private final int parallelism;
+
+    /** A scanner using INDEX that hashes with as many threads as
+     *  -Dgitlet.threads says, by default one per processor. */
+    public WorkingTreeScanner(Index index) {
+        this(index, Integer.getInteger("gitlet.threads",
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    public WorkingTreeScanner(Index index, int parallelism) {
+        this.index = index;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /** Returns the blob ids of those of NAMES that are plain files in DIR,
+     *  keyed by name. Names that are not plain files are left out. Newly
+     *  computed ids are recorded in the index. */
+    public HashMap<String, String> hash(File dir, Collection<String> names) {
+        HashMap<String, String> result = new HashMap<>();
+        List<String> toHash = new ArrayList<>();
+        List<Index.Entry> stats = new ArrayList<>();
+        for (String name : names) {
+            Index.Entry stat = Index.stat(Utils.join(dir, name));
+            if (stat == null) {
+                continue;
+            }
+            String cached = index.cachedID(name, stat);
+            if (cached != null) {
+                result.put(name, cached);
+            } else {
+                toHash.add(name);
+                stats.add(stat);
+            }
+        }
+
+        String[] ids = new String[toHash.size()];
+        HashTask task = new HashTask(dir, toHash, ids, 0, ids.length);
+        if (parallelism == 1 || ids.length <= CHUNK) {
+            task.compute();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        for (int i = 0; i < ids.length; i += 1) {
+            result.put(toHash.get(i), ids[i]);
+            index.record(toHash.get(i), stats.get(i), ids[i]);
+        }
+        return result;
+    }
+
+    /** Hashes NAMES[LO..HI) into IDS[LO..HI), splitting until CHUNK
+     *  files remain. */
+    private static class HashTask extends RecursiveAction {
+        private final File dir;
+        private final List<String> names;
+        private final String[] ids;
+        private final int lo;
+        private final int hi;
+
+        HashTask(File dir, List<String> names, String[] ids, int lo, int hi) {
+            this.dir = dir;
+            this.names = names;
+            this.ids = ids;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= CHUNK || getPool() == null) {
+                Hasher hasher = new Hasher();
+                for (int i = lo; i < hi; i += 1) {
+                    ids[i] = hasher.hash(Utils.join(dir, names.get(i)));
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new HashTask(dir, names, ids, lo, mid),
+                    new HashTask(dir, names, ids, mid, hi));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Collects the deletions and writes needed to update the working directory
+ *  and then applies them in three phases: every deletion first, then all
+ *  writes concurrently on a bounded thread pool, and finally the new stats
+ *  are recorded in the index on the calling thread. No path is both deleted
+ *  and written, so the writes cannot race with each other or with a delete.
+ *  With -Dgitlet.verbose the time spent in each phase is reported.
+ *  @author Kyusuk Oh
+ */
+public class WorkingTreeWriter {
+
+    /** Default number of files written at once. Override with
+     *  -Dgitlet.writers=N. */
+    static final int DEFAULT_WRITERS = 8;
+
+    /** One file to write with a stored blob. */
+    private static class Write {
+        private final String name;
+        private final String blobID;
+        /** For a chunked blob, the blob the file holds before it is
+         *  written, if the index knows it. */
+        private String currentID;
+
+        Write(String name, String blobID) {
+            this.name = name;
+            this.blobID = blobID;
+        }
+    }
+
+    private final ObjectStore store;
+    private final Index index;
+    private final int writers;
+    private final List<String> deletes = new ArrayList<>();
+    private final List<Write> writes = new ArrayList<>();
+
+    /** A writer reading blobs from STORE and recording stats in INDEX. */
+    public WorkingTreeWriter(ObjectStore store, Index index) {
+        this(store, index, Integer.getInteger("gitlet.writers", DEFAULT_WRITERS));
+    }
+
+    public WorkingTreeWriter(ObjectStore store, Index index, int writers) {
+        this.store = store;
+        this.index = index;
+        this.writers = Math.max(1, writers);
+    }
+
+    /** Schedules working file NAME for deletion. */
+    public void delete(String name) {
+        deletes.add(name);
+    }
+
+    /** Schedules working file NAME to be written with blob BLOBID. */
+    public void write(String name, String blobID) {
+        writes.add(new Write(name, blobID));
+    }
+
+    /** Returns the number of scheduled deletions and writes. */
+    public int size() {
+        return deletes.size() + writes.size();
+    }
+
+    /** Carries out everything scheduled so far. */
+    public void apply() {
+        long start = System.nanoTime();
+        for (String name : deletes) {
+            Utils.restrictedDelete(Utils.join(Repository.CWD, name));
+            index.forget(name);
+        }
+        for (Write write : writes) {
+            if (store.isChunked(write.blobID)) {
+                write.currentID = index.cachedID(write.name,
+                        Utils.join(Repository.CWD, write.name));
+            }
+        }
+        long deleted = System.nanoTime();
+
+        if (writers == 1 || writes.size() <= 1) {
+            for (Write write : writes) {
+                writeFile(write);
+            }
+        } else {
+            writeConcurrently();
+        }
+        long written = System.nanoTime();
+
+        for (Write write : writes) {
+            index.recordWritten(write.name,
+                    Utils.join(Repository.CWD, write.name), write.blobID);
+        }
+        long recorded = System.nanoTime();
+
+        Utils.verbose("working tree: %d deletes in %.1fms, %d writes in %.1fms"
+                        + " (%d writers), index update in %.1fms",
+                deletes.size(), (deleted - start) / 1e6,
+                writes.size(), (written - deleted) / 1e6, writers,
+                (recorded - written) / 1e6);
+        deletes.clear();
+        writes.clear();
+    }
+
+    private void writeConcurrently() {
+        ExecutorService pool =
+                Executors.newFixedThreadPool(Math.min(writers, writes.size()));
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+            for (Write write : writes) {
+                pending.add(pool.submit(() -> writeFile(write)));
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw Utils.error("Interrupted while writing the working directory.");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void writeFile(Write write) {
+        store.copyTo(write.blobID, Utils.join(Repository.CWD, write.name), write.currentID);
+    }
+}